@@ -1,4 +1,4 @@
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -22,9 +22,7 @@ public class Debug extends PApplet {
 	public void setup() {
 		ChessNet seeder = null;
 		try {
-			FileInputStream netFile = new FileInputStream("nets/net_170.txt");
-			seeder = new ChessNet(netFile);
-			netFile.close();
+			seeder = new ChessNet(new File("nets/net_170.txt"));
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
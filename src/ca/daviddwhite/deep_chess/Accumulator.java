@@ -0,0 +1,190 @@
+package ca.daviddwhite.deep_chess;
+
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.Piece;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+import ca.daviddwhite.deep_chess.net.FirstLayer;
+import ca.daviddwhite.deep_chess.net.QuantizedNet;
+
+/**
+ * The Class Accumulator holds the first hidden layer sums of a ChessNet for a
+ * position, and keeps them up to date as moves are made and unmade. Only the
+ * inputs of the squares changed by a move are added or removed, rather than
+ * recalculating the whole first layer. An accumulator can be refreshed for any
+ * net, stack of nets or quantized net, and its buffers grow to fit the largest
+ * first layer it has been used with.
+ */
+public class Accumulator {
+	// The first layer the sums are currently calculated for, or null if they are
+	// calculated for a quantized net
+	private FirstLayer net;
+	// The quantized net the sums are currently calculated for, if any
+	private QuantizedNet quantizedNet;
+
+	// The side the inputs are encoded for
+	private boolean white;
+
+	// The first hidden layer sums before activation
+	private double[] sums = new double[0];
+	// The quantized first hidden layer sums before activation
+	private short[] quantizedSums = new short[0];
+
+	// The active inputs of the position being refreshed
+	private int[] featureIndices = new int[ChessNet.MAX_FEATURES];
+	private int[] featureSigns = new int[ChessNet.MAX_FEATURES];
+
+	// The squares that may be changed by the current move and their pieces
+	private int[] squares = new int[4];
+	private int[] pieces = new int[4];
+	private int squareNum;
+
+	/**
+	 * Recalculate the sums from scratch for a position.
+	 *
+	 * @param net
+	 *            the first layer to calculate the sums for
+	 * @param pos
+	 *            the position to calculate the sums for
+	 * @param white
+	 *            true if the inputs are encoded for white
+	 */
+	public void refresh(FirstLayer net, Position pos, boolean white) {
+		this.net = net;
+		this.quantizedNet = null;
+		this.white = white;
+		if (sums.length < net.getFirstLayerSize())
+			sums = new double[net.getFirstLayerSize()];
+
+		int count = ChessNet.getFeatures(pos, white, featureIndices, featureSigns);
+		net.firstLayerSparse(featureIndices, featureSigns, count, sums);
+	}
+
+	/**
+	 * Recalculate the quantized sums from scratch for a position.
+	 *
+	 * @param net
+	 *            the quantized net to calculate the sums for
+	 * @param pos
+	 *            the position to calculate the sums for
+	 * @param white
+	 *            true if the inputs are encoded for white
+	 */
+	public void refresh(QuantizedNet net, Position pos, boolean white) {
+		this.net = null;
+		this.quantizedNet = net;
+		this.white = white;
+		if (quantizedSums.length < net.getFirstLayerSize())
+			quantizedSums = new short[net.getFirstLayerSize()];
+
+		int count = ChessNet.getFeatures(pos, white, featureIndices, featureSigns);
+		net.firstLayerSparse(featureIndices, featureSigns, count, quantizedSums);
+	}
+
+	/**
+	 * Make a move on the position and update the sums.
+	 *
+	 * @param pos
+	 *            the position the sums were calculated for
+	 * @param m
+	 *            the move to make, encoded with {@link Move#encode()}
+	 * @param ui
+	 *            the undo info for the move
+	 */
+	public void makeMove(Position pos, int m, UndoInfo ui) {
+		findSquares(pos, m, pos.getPiece(Move.getFrom(m)));
+		pos.makeMove(m, ui);
+		updateSquares(pos);
+	}
+
+	/**
+	 * Unmake a move on the position and update the sums.
+	 *
+	 * @param pos
+	 *            the position the sums were calculated for
+	 * @param m
+	 *            the move to unmake, encoded with {@link Move#encode()}
+	 * @param ui
+	 *            the undo info from making the move
+	 */
+	public void unMakeMove(Position pos, int m, UndoInfo ui) {
+		findSquares(pos, m, Move.getPromoteTo(m) != Piece.EMPTY ? Piece.WPAWN : pos.getPiece(Move.getTo(m)));
+		pos.unMakeMove(m, ui);
+		updateSquares(pos);
+	}
+
+	/**
+	 * Gets the first hidden layer sums before activation. Only the first
+	 * {@link FirstLayer#getFirstLayerSize()} values belong to the current net.
+	 *
+	 * @return the first layer sums
+	 */
+	public double[] getSums() {
+		return sums;
+	}
+
+	/**
+	 * Gets the quantized first hidden layer sums before activation. Only the
+	 * first {@link QuantizedNet#getFirstLayerSize()} values belong to the current
+	 * net.
+	 *
+	 * @return the quantized first layer sums
+	 */
+	public short[] getQuantizedSums() {
+		return quantizedSums;
+	}
+
+	// Record the squares a move can change and the pieces currently on them
+	private void findSquares(Position pos, int m, int movePiece) {
+		int from = Move.getFrom(m);
+		int to = Move.getTo(m);
+		squareNum = 0;
+		addSquare(pos, from);
+		addSquare(pos, to);
+
+		if (movePiece == Piece.WKING || movePiece == Piece.BKING) {
+			// Castling also moves a rook
+			if (to == from + 2) {
+				addSquare(pos, from + 3);
+				addSquare(pos, from + 1);
+			} else if (to == from - 2) {
+				addSquare(pos, from - 4);
+				addSquare(pos, from - 1);
+			}
+		} else if (movePiece == Piece.WPAWN || movePiece == Piece.BPAWN) {
+			// En passant captures a pawn beside the from square
+			if (Position.getX(from) != Position.getX(to))
+				addSquare(pos, Position.getSquare(Position.getX(to), Position.getY(from)));
+		}
+	}
+
+	// Record a square and its piece
+	private void addSquare(Position pos, int square) {
+		squares[squareNum] = square;
+		pieces[squareNum] = pos.getPiece(square);
+		squareNum++;
+	}
+
+	// Remove the old and add the new inputs of every changed square
+	private void updateSquares(Position pos) {
+		for (int i = 0; i < squareNum; i++) {
+			int oldPiece = pieces[i];
+			int newPiece = pos.getPiece(squares[i]);
+			if (oldPiece == newPiece)
+				continue;
+			if (oldPiece != Piece.EMPTY)
+				addInput(ChessNet.inputIndex(squares[i], oldPiece, white), -ChessNet.inputValue(oldPiece, white));
+			if (newPiece != Piece.EMPTY)
+				addInput(ChessNet.inputIndex(squares[i], newPiece, white), ChessNet.inputValue(newPiece, white));
+		}
+	}
+
+	// Add an input with the given change in value to the current sums
+	private void addInput(int index, double value) {
+		if (net != null)
+			net.addInputColumn(sums, index, value);
+		else
+			quantizedNet.addInputColumn(quantizedSums, index, value > 0 ? 1 : -1);
+	}
+}
@@ -1,25 +1,34 @@
 package ca.daviddwhite.deep_chess;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
 
+import org.petero.cuckoo.engine.chess.BitBoard;
 import org.petero.cuckoo.engine.chess.Game.GameState;
 import org.petero.cuckoo.engine.chess.Move;
 import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.MovePlayer;
 import org.petero.cuckoo.engine.chess.Piece;
-import org.petero.cuckoo.engine.chess.Player;
 import org.petero.cuckoo.engine.chess.Position;
 import org.petero.cuckoo.engine.chess.TextIO;
 import org.petero.cuckoo.engine.chess.UndoInfo;
 
 import ca.daviddwhite.deep_chess.net.MutationParameter;
 import ca.daviddwhite.deep_chess.net.NeuralNet;
-import ca.daviddwhite.deep_chess.net.Neuron;
+import ca.daviddwhite.deep_chess.net.QuantizedNet;
+import ca.daviddwhite.deep_chess.net.StackedNet;
 
 /**
  * The Class ChessNet is a class which makes chess moves using a neural network.
+ * A ChessNet can choose moves for any number of games on different threads at
+ * once, and copies share their network weights until they are mutated.
  */
-public class ChessNet implements Player {
+public class ChessNet implements MovePlayer {
 
 	/**
 	 * A copy of a ChessNet class with reference to the original for thread-safe
@@ -54,6 +63,9 @@ public class ChessNet implements Player {
 	/** The number of neurons in the output layer of the network */
 	public static final int OUTPUTS = 1;
 
+	/** The maximum number of active inputs for a position, one for each piece. */
+	public static final int MAX_FEATURES = 32;
+
 	/** The step size used to normalize the inputs from -1 to 1. */
 	public static final double INPUT_STEP = (2 / 15.0);
 
@@ -61,11 +73,21 @@ public class ChessNet implements Player {
 
 	private NeuralNet net;
 
-	// Current fitness of the net
-	private double fitness;
+	// Frozen quantized copy of the net, used instead of the net when set
+	private QuantizedNet quantized;
+
+	// The fixed point scale of game fitness, in units per fitness point
+	private static final double FITNESS_SCALE = 1L << 32;
+
+	// Total fitness of the games the net has played, in fixed point. Games finish
+	// on many threads at once, so the stats are kept in striped adders and only
+	// summed when read. Integer sums don't depend on the order games finish in,
+	// so seeded runs get the same fitness on any number of threads.
+	private final LongAdder fitness = new LongAdder();
 
 	// Game stats
-	private int wWins, bWins, wLosses, bLosses, draws;
+	private final LongAdder wWins = new LongAdder(), bWins = new LongAdder(), wLosses = new LongAdder(),
+			bLosses = new LongAdder(), draws = new LongAdder();
 
 	/**
 	 * Instantiates a new chess net.
@@ -74,6 +96,16 @@ public class ChessNet implements Player {
 		net = new NeuralNet(INPUTS, HIDDEN_LAYERS, OUTPUTS);
 	}
 
+	/**
+	 * Instantiates a new chess net with weights drawn from a random generator.
+	 *
+	 * @param random
+	 *            the random generator to draw the weights from
+	 */
+	public ChessNet(RandomGenerator random) {
+		net = new NeuralNet(INPUTS, HIDDEN_LAYERS, OUTPUTS, random);
+	}
+
 	/**
 	 * Instantiates a new chess net from an input stream.
 	 *
@@ -84,6 +116,19 @@ public class ChessNet implements Player {
 		net = new NeuralNet(is);
 	}
 
+	/**
+	 * Instantiates a new chess net from a net file in either the text or binary
+	 * format.
+	 *
+	 * @param file
+	 *            the file to read from
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public ChessNet(File file) throws IOException {
+		net = NeuralNet.load(file);
+	}
+
 	/**
 	 * Copy constructor for Chess Net.
 	 *
@@ -92,21 +137,37 @@ public class ChessNet implements Player {
 	 */
 	public ChessNet(ChessNet cn) {
 		net = new NeuralNet(cn.net);
-		this.fitness = cn.fitness;
-		this.wWins = cn.wWins;
-		this.bWins = cn.bWins;
-		this.wLosses = cn.wLosses;
-		this.bLosses = cn.bLosses;
-		this.draws = cn.draws;
+		// The quantized net is frozen, so the copy can share it
+		quantized = cn.quantized;
+		this.fitness.add(cn.fitness.sum());
+		this.wWins.add(cn.wWins.sum());
+		this.bWins.add(cn.bWins.sum());
+		this.wLosses.add(cn.wLosses.sum());
+		this.bLosses.add(cn.bLosses.sum());
+		this.draws.add(cn.draws.sum());
 	}
 
 	// Creates a new chessNet with an identical neural net
-	private ChessNet(NeuralNet n) {
+	ChessNet(NeuralNet n) {
 		net = new NeuralNet(n);
 	}
 
+	// Creates a new chessNet playing with the given neural net, which is not
+	// copied, and the stats saved by getStatCounts
+	ChessNet(NeuralNet n, long[] statCounts) {
+		net = n;
+		this.fitness.add(statCounts[0]);
+		this.wWins.add(statCounts[1]);
+		this.bWins.add(statCounts[2]);
+		this.wLosses.add(statCounts[3]);
+		this.bLosses.add(statCounts[4]);
+		this.draws.add(statCounts[5]);
+	}
+
 	/**
-	 * Adds the given game stat to this nets record.
+	 * Adds the given game stat to this nets record. Any number of threads can add
+	 * stats at once. The fitness is rounded to a multiple of 2^-32 so it can be
+	 * summed exactly.
 	 *
 	 * @param fitness
 	 *            the fitness of the game
@@ -120,47 +181,53 @@ public class ChessNet implements Player {
 		case WHITE_MATE:
 		case RESIGN_BLACK:
 			if (isWhite)
-				wWins++;
+				wWins.increment();
 			else
-				bLosses++;
+				bLosses.increment();
 			break;
 		case BLACK_MATE:
 		case RESIGN_WHITE:
 			if (isWhite)
-				wLosses++;
+				wLosses.increment();
 			else
-				bWins++;
+				bWins.increment();
 			break;
 		default:
-			draws++;
+			draws.increment();
 		}
-
-		// Keep a rolling average of the fitness score
-		int gameNum = wWins + bWins + wLosses + bLosses + draws;
-		this.fitness *= (gameNum - 1.0) / gameNum;
-		this.fitness += fitness / gameNum;
+		this.fitness.add(Math.round(fitness * FITNESS_SCALE));
 	}
 
 	/**
-	 * Get the stats for this neural net in an array
+	 * Get the stats for this neural net in an array. The fitness is the average
+	 * fitness of the games played. Stats should be read once the games have
+	 * finished, as a game finishing during the call may be partly counted.
 	 *
-	 * @return the stats as an array in the form of {fitness, wins, losses, draws,
-	 *         wasted}
+	 * @return the stats as an array in the form of {fitness, white wins, black
+	 *         wins, white losses, black losses, draws}
 	 */
 	public double[] getStats() {
-		return new double[] {fitness, wWins, bWins, wLosses, bLosses, draws};
+		long w = wWins.sum(), b = bWins.sum(), wl = wLosses.sum(), bl = bLosses.sum(), d = draws.sum();
+		long gameNum = w + b + wl + bl + d;
+		return new double[] {gameNum == 0 ? 0 : fitness.sum() / FITNESS_SCALE / gameNum, w, b, wl, bl, d};
+	}
+
+	// Get the raw stats, which restore the stats exactly when the net is read
+	// back from a history
+	long[] getStatCounts() {
+		return new long[] {fitness.sum(), wWins.sum(), bWins.sum(), wLosses.sum(), bLosses.sum(), draws.sum()};
 	}
 
 	/**
 	 * Reset the stats of this chess net.
 	 */
 	public void clearStats() {
-		fitness = 0;
-		wWins = 0;
-		bWins = 0;
-		wLosses = 0;
-		bLosses = 0;
-		draws = 0;
+		fitness.reset();
+		wWins.reset();
+		bWins.reset();
+		wLosses.reset();
+		bLosses.reset();
+		draws.reset();
 	}
 
 	/**
@@ -171,101 +238,238 @@ public class ChessNet implements Player {
 	 * @return the move to make
 	 */
 	public Move getMove(Position pos) {
-		// Generate Legal Moves
-		MoveGen.MoveList moves;
-		if (!MoveGen.inCheck(pos))
-			moves = new MoveGen().pseudoLegalMoves(pos);
+		return getMove(pos, MoveContext.current());
+	}
+
+	/**
+	 * Decide on a move based on the current board state, keeping the working
+	 * values in the given context.
+	 *
+	 * @param pos
+	 *            the position of the game
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the move to make
+	 */
+	public Move getMove(Position pos, MoveContext context) {
+		MoveGen moveGen = MoveGen.current();
+		MoveGen.MoveList moves = legalMoves(pos, moveGen);
+		Move move = getMove(pos, moves, context);
+		// The chosen move is reused by the next choice, so it is copied out
+		if (move != null)
+			move = new Move(move);
+		moveGen.returnMoveList(moves);
+		return move;
+	}
+
+	/**
+	 * Decide on a move from legal moves which have already been generated, keeping
+	 * the working values in the given context.
+	 *
+	 * @param pos
+	 *            the position of the game
+	 * @param moves
+	 *            the legal moves of the position, which are not modified
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the move to make, which is one of the given moves, or null if there
+	 *         are none. The returned move is reused by the next call with the same
+	 *         context.
+	 */
+	public Move getMove(Position pos, MoveGen.MoveList moves, MoveContext context) {
+		if (moves.size == 0)
+			return null;
+
+		double[] moveValues;
+		if (quantized != null)
+			moveValues = rankMovesQuantized(pos, moves, context);
 		else
-			moves = new MoveGen().checkEvasions(pos);
-		MoveGen.removeIllegal(pos, moves);
+			moveValues = rankMoves(pos, moves, context);
 
-		double[] moveValues = new double[moves.size];
-		boolean white = pos.whiteMove;
+		// Search for highest ranked move
+		int bestMoveIndex = 0;
+		for (int i = 0; i < moves.size; i++) {
+			if (moveValues[i] > moveValues[bestMoveIndex])
+				bestMoveIndex = i;
+		}
 
-		// Get the input neurons
-		Neuron[] n = net.getInputs();
+		moves.getMove(bestMoveIndex, context.move);
+		return context.move;
+	}
 
-		// Calculate position value for all potential moves
+	/**
+	 * Stack the neural nets of some chess nets, so they can choose moves together
+	 * with {@link #getMoves(StackedNet, Position, MoveContext)}. The stack is
+	 * frozen when it is created.
+	 *
+	 * @param nets
+	 *            the chess nets to stack
+	 * @return the stacked nets
+	 */
+	public static StackedNet stack(ChessNet... nets) {
+		NeuralNet[] neuralNets = new NeuralNet[nets.length];
+		for (int i = 0; i < nets.length; i++)
+			neuralNets[i] = nets[i].net;
+		return new StackedNet(neuralNets);
+	}
+
+	/**
+	 * Decide on the move every net in a stack would make. The first layers of the
+	 * whole stack are updated together for each potential move, then each net
+	 * ranks the moves with its later layers.
+	 *
+	 * @param stack
+	 *            the stacked nets
+	 * @param pos
+	 *            the position of the game
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the move each net would make, or nulls if there are no legal moves
+	 */
+	public static Move[] getMoves(StackedNet stack, Position pos, MoveContext context) {
+		MoveGen moveGen = MoveGen.current();
+		MoveGen.MoveList moves = legalMoves(pos, moveGen);
+		Move[] chosen = new Move[stack.getNetCount()];
+		if (moves.size == 0) {
+			moveGen.returnMoveList(moves);
+			return chosen;
+		}
+
+		// Calculate the stacked first layer after every potential move
+		Accumulator accumulator = context.accumulator;
+		accumulator.refresh(stack, pos, pos.whiteMove);
+		double[] sums = accumulator.getSums();
+		int size = stack.getFirstLayerSize();
+		double[] firstLayers = context.fitFirstLayers(moves.size * size);
+		UndoInfo ui = context.undo;
 		for (int i = 0; i < moves.size; i++) {
-			UndoInfo ui = new UndoInfo();
-			pos.makeMove(moves.m[i], ui);
+			accumulator.makeMove(pos, moves.m[i], ui);
+			System.arraycopy(sums, 0, firstLayers, i * size, size);
+			accumulator.unMakeMove(pos, moves.m[i], ui);
+		}
 
-			double[] inputs = getInputs(pos, white);
-			for (int j = 0; j < INPUTS; j++) {
-				n[j].value = inputs[j];
+		// Rank the moves with the rest of each net
+		for (int k = 0; k < chosen.length; k++) {
+			double[] moveValues = stack.feedForwardFromFirstLayer(k, firstLayers, moves.size, context);
+			int bestMoveIndex = 0;
+			for (int i = 0; i < moves.size; i++) {
+				if (moveValues[i] > moveValues[bestMoveIndex])
+					bestMoveIndex = i;
 			}
-			net.feedForward();
+			chosen[k] = moves.getMove(bestMoveIndex);
+		}
+		moveGen.returnMoveList(moves);
+		return chosen;
+	}
 
-			// Rank move
-			moveValues[i] = net.getOutputs()[0].value;
+	// Generate the legal moves of a position. The list should be returned to the
+	// move generator once it is no longer needed.
+	private static MoveGen.MoveList legalMoves(Position pos, MoveGen moveGen) {
+		MoveGen.MoveList moves;
+		if (!MoveGen.inCheck(pos))
+			moves = moveGen.pseudoLegalMoves(pos);
+		else
+			moves = moveGen.checkEvasions(pos);
+		MoveGen.removeIllegal(pos, moves);
+		return moves;
+	}
 
-			pos.unMakeMove(moves.m[i], ui);
+	// Rank moves with the neural net
+	private double[] rankMoves(Position pos, MoveGen.MoveList moves, MoveContext context) {
+		// Calculate the first layer of the position after every potential move by
+		// updating the current position's first layer
+		Accumulator accumulator = context.accumulator;
+		accumulator.refresh(net, pos, pos.whiteMove);
+		double[] sums = accumulator.getSums();
+		int size = net.getFirstLayerSize();
+		double[] firstLayers = context.fitFirstLayers(moves.size * size);
+		UndoInfo ui = context.undo;
+		for (int i = 0; i < moves.size; i++) {
+			accumulator.makeMove(pos, moves.m[i], ui);
+			System.arraycopy(sums, 0, firstLayers, i * size, size);
+			accumulator.unMakeMove(pos, moves.m[i], ui);
 		}
 
-		// Search for highest ranked move
-		int bestMoveIndex = 0;
-		for (int i = 0; i < moveValues.length; i++) {
-			if (moveValues[i] > moveValues[bestMoveIndex])
-				bestMoveIndex = i;
+		// Rank all moves in a single pass through the rest of the network
+		return net.feedForwardFromFirstLayer(firstLayers, moves.size, context);
+	}
+
+	// Rank moves with the quantized copy of the neural net, updating the current
+	// position's quantized first layer for each potential move
+	private double[] rankMovesQuantized(Position pos, MoveGen.MoveList moves, MoveContext context) {
+		Accumulator accumulator = context.accumulator;
+		accumulator.refresh(quantized, pos, pos.whiteMove);
+		short[] sums = accumulator.getQuantizedSums();
+		double[] moveValues = context.fitMoveValues(moves.size);
+		UndoInfo ui = context.undo;
+		for (int i = 0; i < moves.size; i++) {
+			accumulator.makeMove(pos, moves.m[i], ui);
+			moveValues[i] = quantized.feedForwardFromFirstLayer(sums, context)[0];
+			accumulator.unMakeMove(pos, moves.m[i], ui);
 		}
+		return moveValues;
+	}
+
+	// The input offset of each piece type within the inputs of a square
+	private static final int[] PIECE_INPUTS = {-1, 5, 4, 2, 3, 1, 0, 5, 4, 2, 3, 1, 0};
 
-		return moves.m[bestMoveIndex];
+	/**
+	 * Gets the index of the input neuron for a piece on a square. Squares are
+	 * mirrored vertically when encoding for black.
+	 *
+	 * @param square
+	 *            the square the piece is on
+	 * @param piece
+	 *            the piece, which must not be empty
+	 * @param white
+	 *            true if encoding for white
+	 * @return the input neuron index
+	 */
+	static int inputIndex(int square, int piece, boolean white) {
+		int index = white ? square : 56 - square / 8 * 8 + square % 8;
+		return index * 6 + PIECE_INPUTS[piece];
 	}
 
-	// Get the inputs for move value calculation
-	private static double[] getInputs(Position pos, boolean white) {
-		double[] inputs = new double[64 * 6];
+	/**
+	 * Gets the value of the input neuron for a piece, 1 for friendly pieces and -1
+	 * for enemy pieces.
+	 *
+	 * @param piece
+	 *            the piece, which must not be empty
+	 * @param white
+	 *            true if encoding for white
+	 * @return the input neuron value
+	 */
+	static double inputValue(int piece, boolean white) {
+		return Piece.isWhite(piece) == white ? 1 : -1;
+	}
 
-		for (int i = 0; i < 64; i++) {
-			int index = 0;
-			if (white)
-				index = i;
-			else
-				index = 64 - (8 + i / 8 * 8) + (i % 8);
-
-			switch (pos.getPiece(i)) {
-			case Piece.WPAWN:
-				inputs[index * 6] = white ? 1 : -1;
-				break;
-			case Piece.WKNIGHT:
-				inputs[index * 6 + 1] = white ? 1 : -1;
-				break;
-			case Piece.WROOK:
-				inputs[index * 6 + 2] = white ? 1 : -1;
-				break;
-			case Piece.WBISHOP:
-				inputs[index * 6 + 3] = white ? 1 : -1;
-				break;
-			case Piece.WQUEEN:
-				inputs[index * 6 + 4] = white ? 1 : -1;
-				break;
-			case Piece.WKING:
-				inputs[index * 6 + 5] = white ? 1 : -1;
-				break;
-			case Piece.BPAWN:
-				inputs[index * 6] = white ? -1 : 1;
-				break;
-			case Piece.BKNIGHT:
-				inputs[index * 6 + 1] = white ? -1 : 1;
-				break;
-			case Piece.BROOK:
-				inputs[index * 6 + 2] = white ? -1 : 1;
-				break;
-			case Piece.BBISHOP:
-				inputs[index * 6 + 3] = white ? -1 : 1;
-				break;
-			case Piece.BQUEEN:
-				inputs[index * 6 + 4] = white ? -1 : 1;
-				break;
-			case Piece.BKING:
-				inputs[index * 6 + 5] = white ? -1 : 1;
-				break;
-			default:
-				break;
-			}
+	/**
+	 * Gets the active inputs of a position. At most one input is active for each
+	 * piece on the board.
+	 *
+	 * @param pos
+	 *            the position to encode
+	 * @param white
+	 *            true if encoding for white
+	 * @param indices
+	 *            the array to write the active input indices to
+	 * @param signs
+	 *            the array to write the active input signs to
+	 * @return the number of active inputs
+	 */
+	public static int getFeatures(Position pos, boolean white, int[] indices, int[] signs) {
+		int count = 0;
+		long occupied = pos.whiteBB | pos.blackBB;
+		while (occupied != 0) {
+			int square = BitBoard.numberOfTrailingZeros(occupied);
+			int piece = pos.getPiece(square);
+			indices[count] = inputIndex(square, piece, white);
+			signs[count] = Piece.isWhite(piece) == white ? 1 : -1;
+			count++;
+			occupied &= occupied - 1;
 		}
-
-		return inputs;
+		return count;
 	}
 
 	/**
@@ -274,20 +478,86 @@ public class ChessNet implements Player {
 	 * @return the mutated copy of this Chess NEt
 	 */
 	public ChessNet getMutatedCopy(MutationParameter mp) {
+		return getMutatedCopy(mp, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Gets a mutated copy of this Chess Net, drawing every random choice from the
+	 * given generator so the mutation can be reproduced.
+	 *
+	 * @param mp
+	 *            the mutation parameters
+	 * @param random
+	 *            the random generator to draw from
+	 * @return the mutated copy of this Chess Net
+	 */
+	public ChessNet getMutatedCopy(MutationParameter mp, RandomGenerator random) {
 		ChessNet mutated = new ChessNet(this.net);
 
-		double mutationType = Math.random();
+		double mutationType = random.nextDouble();
 
 		if (mutationType < mp.weightMutateChance)
-			mutated.net.mutateWeights(mp.weightModifyChance, mp.weightModifyChance);
+			mutated.net.mutateWeights(mp.weightModifyChance, mp.weightModifyChance, random);
 		else if (mutationType < mp.weightMutateChance + mp.neuronMutateChance)
-			mutated.net.mutateNeurons(mp.neuronModifyChance, mp.neuronRemoveChance);
+			mutated.net.mutateNeurons(mp.neuronModifyChance, mp.neuronRemoveChance, random);
 		else
-			mutated.net.mutateLayer(mp.maxLayerInsert, mp.maxLayerRemove, mp.layerRemoveChance);
+			mutated.net.mutateLayer(mp.maxLayerInsert, mp.maxLayerRemove, mp.layerRemoveChance, random);
 
 		return mutated;
 	}
 
+	/**
+	 * Switch between playing with the neural net and playing with a quantized copy
+	 * of it which covers the full range of each activation. The quantized copy is
+	 * frozen when it is created, so this must be called again for changes to the
+	 * neural net to take effect. Playing with the quantized copy is not faster than
+	 * playing with the neural net.
+	 *
+	 * @param quantized
+	 *            true to play with a quantized copy of the net
+	 * @see #setQuantized(List)
+	 */
+	public void setQuantized(boolean quantized) {
+		this.quantized = quantized ? new QuantizedNet(net) : null;
+	}
+
+	/**
+	 * Play with a quantized copy of the neural net calibrated on sample positions.
+	 * Every legal move from each position is run through the neural net, and each
+	 * layer of the copy is scaled to cover the values it reaches. The quantized
+	 * copy is frozen when it is created.
+	 *
+	 * @param positions
+	 *            the positions to calibrate on
+	 */
+	public void setQuantized(List<Position> positions) {
+		QuantizedNet.Calibration calibration = new QuantizedNet.Calibration(net);
+		MoveGen moveGen = MoveGen.current();
+		int[] indices = new int[MAX_FEATURES];
+		int[] signs = new int[MAX_FEATURES];
+		UndoInfo ui = new UndoInfo();
+		for (Position pos : positions) {
+			boolean white = pos.whiteMove;
+			MoveGen.MoveList moves = legalMoves(pos, moveGen);
+			for (int i = 0; i < moves.size; i++) {
+				pos.makeMove(moves.m[i], ui);
+				calibration.addSample(indices, signs, getFeatures(pos, white, indices, signs));
+				pos.unMakeMove(moves.m[i], ui);
+			}
+			moveGen.returnMoveList(moves);
+		}
+		this.quantized = new QuantizedNet(net, calibration);
+	}
+
+	/**
+	 * Checks if this chess net plays with a quantized copy of its neural net.
+	 *
+	 * @return true if playing with the quantized net
+	 */
+	public boolean isQuantized() {
+		return quantized != null;
+	}
+
 	/**
 	 * Gets the neural net attached to this chessNet.
 	 *
@@ -308,6 +578,18 @@ public class ChessNet implements Player {
 		return TextIO.moveToString(pos, getMove(pos), false);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.petero.cuckoo.engine.chess.MovePlayer#getMove(org.petero.cuckoo.engine.
+	 * chess.Position, org.petero.cuckoo.engine.chess.MoveGen.MoveList, boolean,
+	 * java.util.List)
+	 */
+	@Override
+	public Move getMove(Position pos, MoveGen.MoveList moves, boolean drawOffer, List<Position> history) {
+		return getMove(pos, moves, MoveContext.current());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.petero.cuckoo.engine.chess.Player#isHumanPlayer()
@@ -0,0 +1,117 @@
+package ca.daviddwhite.deep_chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.daviddwhite.deep_chess.net.MutationParameter;
+
+/**
+ * The Class DeterminismCheck checks that a seeded training run can be
+ * reproduced exactly. The same seeded run is trained on one thread, twice on
+ * several threads and, when the runtime has them, on virtual threads, and the
+ * best net and fitness of every generation are compared.
+ * <p>
+ * Usage: DeterminismCheck [seed]. The check exits with status 1 if any run
+ * differs from the first.
+ */
+public class DeterminismCheck {
+
+	/** The number of nets in each generation. */
+	public static final int GENERATION_SIZE = 6;
+
+	/** The number of generations trained in each run. */
+	public static final int GENERATIONS = 3;
+
+	/**
+	 * The fewest threads parallel runs use, so games are played in parallel even
+	 * on a machine with few processors.
+	 */
+	public static final int MIN_PARALLEL_THREADS = 4;
+
+	/**
+	 * Train a seeded run and record the history of every generation.
+	 *
+	 * @param seed
+	 *            the seed of the run
+	 * @param threadNum
+	 *            the number of threads to play games on
+	 * @param virtualThreads
+	 *            whether to play games on virtual threads
+	 * @return the best net and fitness of each generation, in binary form
+	 */
+	public static List<byte[]> run(long seed, int threadNum, boolean virtualThreads) {
+		Trainer trainer = new Trainer(GENERATION_SIZE, seed);
+		trainer.setVirtualThreads(virtualThreads);
+		MutationParameter mp = new MutationParameter();
+		for (int i = 0; i < GENERATIONS; i++) {
+			trainer.runGeneration(1, 0, false, false, threadNum);
+			trainer.mutateGeneration(mp);
+		}
+
+		List<byte[]> history = new ArrayList<byte[]>();
+		for (int i = 0; i < trainer.generationNum(); i++)
+			history.add(generationRecord(trainer, i));
+		return history;
+	}
+
+	// Write the best net and fitness of a generation
+	private static byte[] generationRecord(Trainer trainer, int generationNum) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			trainer.getGenerationBest(generationNum).getNet().writeBinary(out, false);
+			for (double stat : trainer.bestFitness(generationNum))
+				out.writeDouble(stat);
+			for (double stat : trainer.getGenerationFitness(generationNum))
+				out.writeDouble(stat);
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write a generation", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Find the first generation where two runs differ.
+	 *
+	 * @param expected
+	 *            the history of the first run
+	 * @param actual
+	 *            the history of the second run
+	 * @return the first generation which differs, or -1 if the runs are the same
+	 */
+	public static int firstDifference(List<byte[]> expected, List<byte[]> actual) {
+		for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+			if (i >= expected.size() || i >= actual.size() || !Arrays.equals(expected.get(i), actual.get(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+		int threads = Math.max(MIN_PARALLEL_THREADS, Runtime.getRuntime().availableProcessors());
+
+		List<byte[]> expected = run(seed, 1, false);
+		boolean same = check("Threads: " + threads, expected, run(seed, threads, false));
+		same &= check("Threads: " + threads + " again", expected, run(seed, threads, false));
+		if (Trainer.virtualThreadsAvailable())
+			same &= check("Virtual threads", expected, run(seed, threads, true));
+
+		if (!same) {
+			System.err.println("A seeded run should be reproducible");
+			System.exit(1);
+		}
+	}
+
+	// Compare a run with the first, reporting the result
+	private static boolean check(String name, List<byte[]> expected, List<byte[]> actual) {
+		int difference = firstDifference(expected, actual);
+		System.out.println(name + ": " + (difference < 0 ? "same" : "differs from generation " + difference));
+		return difference < 0;
+	}
+}
@@ -0,0 +1,58 @@
+package ca.daviddwhite.deep_chess;
+
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+import ca.daviddwhite.deep_chess.net.InferenceContext;
+
+/**
+ * The Class MoveContext holds the working values used while a ChessNet chooses a
+ * move, so a ChessNet can choose moves on any number of threads at once. A
+ * context must only be used by one thread at a time, but can be shared by every
+ * ChessNet that thread plays with. Once its buffers have grown to fit the nets
+ * and positions it is used with, choosing a move allocates nothing.
+ */
+public class MoveContext extends InferenceContext {
+	// The context of each thread, used when no context is given
+	private static final ThreadLocal<MoveContext> CURRENT = ThreadLocal.withInitial(MoveContext::new);
+
+	/**
+	 * Gets the move context owned by the current thread.
+	 *
+	 * @return the move context of the current thread
+	 */
+	public static MoveContext current() {
+		return CURRENT.get();
+	}
+
+	// First layer sums of the position being ranked
+	final Accumulator accumulator = new Accumulator();
+
+	// Generates legal moves for games sharing this context
+	final MoveGen moveGen = new MoveGen();
+
+	// Undo information for the move being ranked
+	final UndoInfo undo = new UndoInfo();
+
+	// The last move chosen from a move list, reused for every choice
+	final Move move = new Move(0, 0, 0);
+
+	// First layer sums of the position after each move, and the value of each move
+	private double[] firstLayers = new double[0];
+	private double[] moveValues = new double[0];
+
+	// Make sure the first layer buffer can hold the given number of values
+	double[] fitFirstLayers(int size) {
+		if (firstLayers.length < size)
+			firstLayers = new double[size];
+		return firstLayers;
+	}
+
+	// Make sure the move value buffer can hold the given number of values
+	double[] fitMoveValues(int size) {
+		if (moveValues.length < size)
+			moveValues = new double[size];
+		return moveValues;
+	}
+}
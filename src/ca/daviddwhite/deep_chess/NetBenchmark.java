@@ -0,0 +1,127 @@
+package ca.daviddwhite.deep_chess;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+
+/**
+ * The Class NetBenchmark compares how quickly a ChessNet chooses moves when
+ * playing with its neural net and with a quantized copy of it calibrated on the
+ * benchmark positions, and checks that choosing a move from an already
+ * generated move list allocates nothing once the move context has warmed up.
+ * <p>
+ * Usage: NetBenchmark [-check] [net file]. If no net file is given, a random
+ * net is used. Positions are sampled from games which start with a few random
+ * moves. The allocation check runs first, and the benchmark exits with status 1
+ * if it fails. With -check, only the allocation check is run.
+ */
+public class NetBenchmark {
+
+	/** The number of times each position set is played through before timing. */
+	public static final int WARMUP_ROUNDS = 5;
+
+	/**
+	 * The number of times each position set is played through before measuring
+	 * allocation. The JIT compiler must have finished with the move choice path,
+	 * since the Vector API only avoids allocating once it is compiled.
+	 */
+	public static final int ALLOCATION_WARMUP_ROUNDS = 20;
+
+	/** The number of timed rounds. */
+	public static final int TIMED_ROUNDS = 10;
+
+	/**
+	 * Time how long a chess net takes to choose a move in every position.
+	 *
+	 * @param net
+	 *            the chess net to time
+	 * @param positions
+	 *            the positions to choose moves for
+	 * @return the average time per move in nanoseconds
+	 */
+	public static double timeMoves(ChessNet net, List<Position> positions) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			playAll(net, positions);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < TIMED_ROUNDS; i++)
+			playAll(net, positions);
+		return (System.nanoTime() - start) / (double) (TIMED_ROUNDS * positions.size());
+	}
+
+	// Choose a move in every position
+	private static void playAll(ChessNet net, List<Position> positions) {
+		for (Position pos : positions)
+			net.getMove(pos);
+	}
+
+	/**
+	 * Measure how many bytes a chess net allocates to choose a move from the legal
+	 * moves of a position, as it does when playing a training game.
+	 *
+	 * @param net
+	 *            the chess net to measure
+	 * @param positions
+	 *            the positions to choose moves for
+	 * @return the average bytes allocated per move
+	 */
+	public static double bytesPerMove(ChessNet net, List<Position> positions) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported())
+			throw new UnsupportedOperationException("This JVM can't measure the memory allocated by a thread");
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		List<MoveGen.MoveList> moves = new ArrayList<MoveGen.MoveList>();
+		for (Position pos : positions) {
+			MoveGen.MoveList list = MoveGen.current().pseudoLegalMoves(pos);
+			MoveGen.removeIllegal(pos, list);
+			moves.add(list);
+		}
+		MoveContext context = MoveContext.current();
+		for (int i = 0; i < ALLOCATION_WARMUP_ROUNDS; i++)
+			playAll(net, positions, moves, context);
+
+		long start = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < TIMED_ROUNDS; i++)
+			playAll(net, positions, moves, context);
+		return (threads.getCurrentThreadAllocatedBytes() - start) / (double) (TIMED_ROUNDS * positions.size());
+	}
+
+	// Choose a move from the given legal moves in every position
+	private static void playAll(ChessNet net, List<Position> positions, List<MoveGen.MoveList> moves, MoveContext context) {
+		for (int i = 0; i < positions.size(); i++)
+			net.getMove(positions.get(i), moves.get(i), context);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int arg = 0;
+		boolean checkOnly = args.length > arg && args[arg].equals("-check");
+		if (checkOnly)
+			arg++;
+		ChessNet net = args.length > arg ? new ChessNet(new File(args[arg])) : new ChessNet();
+		List<Position> positions = QuantizationCheck.samplePositions(net, QuantizationCheck.SAMPLE_GAMES, QuantizationCheck.RANDOM_PLIES, QuantizationCheck.SAMPLE_SEED);
+		System.out.println("Positions: " + positions.size());
+
+		ChessNet full = new ChessNet(net);
+		ChessNet quantized = new ChessNet(net);
+		quantized.setQuantized(positions);
+
+		double fullBytes = bytesPerMove(full, positions);
+		double quantizedBytes = bytesPerMove(quantized, positions);
+		System.out.println(String.format("Allocated: %.4f / %.4f bytes per move", fullBytes, quantizedBytes));
+		if (fullBytes > 0 || quantizedBytes > 0) {
+			System.err.println("Choosing a move from a move list should not allocate");
+			System.exit(1);
+		}
+		if (checkOnly)
+			return;
+
+		System.out.println(String.format("Full precision: %.0f ns per move", timeMoves(full, positions)));
+		System.out.println(String.format("Quantized: %.0f ns per move", timeMoves(quantized, positions)));
+	}
+}
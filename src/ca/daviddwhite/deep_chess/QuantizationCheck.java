@@ -0,0 +1,145 @@
+package ca.daviddwhite.deep_chess;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Game.GameState;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.TextIO;
+
+/**
+ * The Class QuantizationCheck reports how often a quantized ChessNet picks a
+ * different move from the same ChessNet playing with its full precision net,
+ * both with a quantized net covering the full activation range and with one
+ * calibrated on sample positions.
+ * <p>
+ * Usage: QuantizationCheck &lt;net file&gt; [FEN file]. If no FEN file is given,
+ * positions are sampled from games which start with a few random moves. The
+ * calibration positions are always sampled from separate games.
+ */
+public class QuantizationCheck {
+
+	/** The number of games sampled when no FEN file is given. */
+	public static final int SAMPLE_GAMES = 100;
+
+	/** The number of random moves at the start of each sampled game. */
+	public static final int RANDOM_PLIES = 6;
+
+	/** The number of games sampled to calibrate the quantized net on. */
+	public static final int CALIBRATION_GAMES = 20;
+
+	/** The seed of the random moves in the sampled games. */
+	public static final long SAMPLE_SEED = 1;
+
+	/** The seed of the random moves in the calibration games. */
+	public static final long CALIBRATION_SEED = 2;
+
+	/**
+	 * Count the positions where the quantized net picks a different move.
+	 *
+	 * @param net
+	 *            the chess net to check
+	 * @param positions
+	 *            the positions to compare moves for
+	 * @param calibration
+	 *            the positions to calibrate the quantized net on, or null to
+	 *            cover the full activation range
+	 * @return the number of positions with a different move
+	 */
+	public static int countDifferences(ChessNet net, List<Position> positions, List<Position> calibration) {
+		ChessNet full = new ChessNet(net);
+		full.setQuantized(false);
+		ChessNet quantized = new ChessNet(net);
+		if (calibration != null)
+			quantized.setQuantized(calibration);
+		else
+			quantized.setQuantized(true);
+
+		int differences = 0;
+		for (Position pos : positions) {
+			// Positions with no legal moves have no move to compare
+			if (!Objects.equals(full.getMove(pos), quantized.getMove(pos)))
+				differences++;
+		}
+		return differences;
+	}
+
+	/**
+	 * Sample positions from games played by a chess net against itself, each
+	 * starting with a few random moves. Each game takes its random moves from its
+	 * own stream of the seed, so the same seed gives the same positions.
+	 *
+	 * @param net
+	 *            the chess net to play with
+	 * @param games
+	 *            the number of games to sample
+	 * @param randomPlies
+	 *            the number of random moves at the start of each game
+	 * @param seed
+	 *            the seed of the random moves
+	 * @return the positions reached in the games
+	 */
+	public static List<Position> samplePositions(ChessNet net, int games, int randomPlies, long seed) {
+		List<Position> positions = new ArrayList<Position>();
+		for (int i = 0; i < games; i++) {
+			RandomGenerator random = RandomStreams.stream(seed, i);
+			TrainingGame game = new TrainingGame(net, net);
+			for (int ply = 0; game.getGameState() == GameState.ALIVE; ply++) {
+				Move m;
+				if (ply < randomPlies) {
+					MoveGen.MoveList moves = game.getLegalMoves();
+					m = moves.getMove(random.nextInt(moves.size));
+				} else {
+					positions.add(new Position(game.pos));
+					m = net.getMove(game.pos);
+				}
+				game.processMove(m);
+			}
+		}
+		return positions;
+	}
+
+	// Read one FEN position per line
+	private static List<Position> readPositions(String fileName) throws IOException, ChessParseError {
+		List<Position> positions = new ArrayList<Position>();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty())
+					positions.add(TextIO.readFEN(line.trim()));
+			}
+		} finally {
+			reader.close();
+		}
+		return positions;
+	}
+
+	public static void main(String[] args) throws IOException, ChessParseError {
+		if (args.length < 1) {
+			System.out.println("Usage: QuantizationCheck <net file> [FEN file]");
+			return;
+		}
+
+		ChessNet net = new ChessNet(new File(args[0]));
+		List<Position> positions = args.length > 1 ? readPositions(args[1]) : samplePositions(net, SAMPLE_GAMES, RANDOM_PLIES, SAMPLE_SEED);
+		List<Position> calibration = samplePositions(net, CALIBRATION_GAMES, RANDOM_PLIES, CALIBRATION_SEED);
+		System.out.println("Positions: " + positions.size());
+		printDifferences("Different moves, full range", countDifferences(net, positions, null), positions.size());
+		printDifferences("Different moves, calibrated", countDifferences(net, positions, calibration), positions.size());
+	}
+
+	// Print a count of different moves with the share of positions it makes up
+	private static void printDifferences(String name, int differences, int positions) {
+		System.out.println(name + ": " + differences + String.format(" (%.2f%%)", 100.0 * differences / Math.max(1, positions)));
+	}
+}
@@ -0,0 +1,52 @@
+package ca.daviddwhite.deep_chess;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The Class RandomStreams derives independent random generators from a run seed
+ * and a stream id. The same seed and id always give the same sequence, no
+ * matter which thread uses the stream or in which order the streams are made,
+ * so a training run can be reproduced exactly.
+ */
+public class RandomStreams {
+
+	// Private constructor, as this class only has static methods
+	private RandomStreams() {}
+
+	/**
+	 * Gets the random generator for a stream.
+	 *
+	 * @param seed
+	 *            the seed of the run
+	 * @param stream
+	 *            the id of the stream
+	 * @return a new random generator for the stream
+	 */
+	public static RandomGenerator stream(long seed, long stream) {
+		return new SplittableRandom(mix(seed ^ mix(stream + 0x9E3779B97F4A7C15L)));
+	}
+
+	/**
+	 * Gets the random generator for a stream identified by a pair of ids, such as
+	 * a generation number and the index of a net within it.
+	 *
+	 * @param seed
+	 *            the seed of the run
+	 * @param major
+	 *            the first id of the stream
+	 * @param minor
+	 *            the second id of the stream
+	 * @return a new random generator for the stream
+	 */
+	public static RandomGenerator stream(long seed, int major, int minor) {
+		return stream(seed, ((long) major << 32) | (minor & 0xFFFFFFFFL));
+	}
+
+	// Scramble the bits of a value, using the finalizer of MurmurHash3
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB93FE5A1B3A7L;
+		return z ^ (z >>> 33);
+	}
+}
@@ -5,10 +5,32 @@
  */
 package ca.daviddwhite.deep_chess;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.Position;
 
 import ca.daviddwhite.deep_chess.net.MutationParameter;
+import ca.daviddwhite.deep_chess.net.NetArchive;
+import ca.daviddwhite.deep_chess.net.StackedNet;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -25,22 +47,67 @@ public class Trainer {
 	private ChessNet[] generation;
 	private ChessNet[] best;
 
-	// The best nets and stats from each previous generation.
-	private ArrayList<ChessNet> generationHistory;
+	// The best nets and stats from each previous generation. The nets are kept
+	// off the heap, with the best net of each generation stored at its number.
+	private NetArchive generationHistory;
+	// The best net of each generation while it is still in the population, so
+	// its stats change as it keeps playing, or null once it has left
+	private ArrayList<ChessNet> liveBest;
+	// The stats each generation best had when it left the population
+	private ArrayList<long[]> archivedBestStats;
 	private ArrayList<double[]> generationFitness;
 	private ArrayList<double[]> bestFitness;
 
 	// The fitness of each generation
 	private HashMap<Integer, double[]> generationRelativeFitness;
 
+	// The seed every random choice of the run is derived from
+	private final long seed;
+
+	// The threads games are played and nets are mutated on
+	private ForkJoinPool workers;
+
+	// Whether games are played on virtual threads when the runtime has them
+	private boolean virtualThreads;
+
+	// Makes an executor which starts a new virtual thread for each task, or null
+	// if the runtime has no virtual threads
+	private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+	// The number of games finished in the current set of games
+	private final LongAdder gamesFinished = new LongAdder();
+
+	// The time in milliseconds between progress reports
+	private static final long PROGRESS_INTERVAL = 5000;
+
+	// The most recently read generation best
+	private int lastBestNum = -1;
+	private ChessNet lastBest;
+
 	/**
-	 * Instantiates a new Trainer class to train chessNets.
+	 * Instantiates a new Trainer class to train chessNets, with a random seed.
 	 *
 	 * @param generationSize
 	 *            the generation size
 	 */
 	public Trainer(int generationSize) {
-		generationHistory = new ArrayList<ChessNet>();
+		this(generationSize, ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Instantiates a new Trainer class to train chessNets. Runs with the same
+	 * seed and settings produce the same nets.
+	 *
+	 * @param generationSize
+	 *            the generation size
+	 * @param seed
+	 *            the seed every random choice of the run is derived from
+	 */
+	public Trainer(int generationSize, long seed) {
+		this.seed = seed;
+		generationHistory = new NetArchive();
+		liveBest = new ArrayList<ChessNet>();
+		archivedBestStats = new ArrayList<long[]>();
 		generationFitness = new ArrayList<double[]>();
 		bestFitness = new ArrayList<double[]>();
 		generationRelativeFitness = new HashMap<Integer, double[]>();
@@ -48,7 +115,7 @@ public class Trainer {
 			throw new IllegalArgumentException("Generation size must be greater than 1");
 		generation = new ChessNet[generationSize];
 		for (int i = 0; i < generation.length; i++)
-			generation[i] = new ChessNet();
+			generation[i] = new ChessNet(childRandom(i));
 	}
 
 	/**
@@ -62,7 +129,27 @@ public class Trainer {
 	 *            the mutation parameters for filling the generation.
 	 */
 	public Trainer(int generationSize, ChessNet seedNet, MutationParameter mp) {
-		generationHistory = new ArrayList<ChessNet>();
+		this(generationSize, seedNet, mp, ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Instantiates a new Trainer class filled with mutated copies of a given net.
+	 * Runs with the same seed, net and settings produce the same nets.
+	 *
+	 * @param generationSize
+	 *            the generation size
+	 * @param seedNet
+	 *            the net to begin training from
+	 * @param mp
+	 *            the mutation parameters for filling the generation.
+	 * @param seed
+	 *            the seed every random choice of the run is derived from
+	 */
+	public Trainer(int generationSize, ChessNet seedNet, MutationParameter mp, long seed) {
+		this.seed = seed;
+		generationHistory = new NetArchive();
+		liveBest = new ArrayList<ChessNet>();
+		archivedBestStats = new ArrayList<long[]>();
 		generationFitness = new ArrayList<double[]>();
 		bestFitness = new ArrayList<double[]>();
 		generationRelativeFitness = new HashMap<Integer, double[]>();
@@ -71,7 +158,21 @@ public class Trainer {
 		generation = new ChessNet[generationSize];
 		generation[0] = new ChessNet(seedNet);
 		for (int i = 1; i < generation.length; i++)
-			generation[i] = seedNet.getMutatedCopy(mp);
+			generation[i] = seedNet.getMutatedCopy(mp, childRandom(i));
+	}
+
+	/**
+	 * Gets the seed every random choice of this run is derived from.
+	 *
+	 * @return the seed of the run
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	// Get the random stream for a net of the generation being created
+	private RandomGenerator childRandom(int child) {
+		return RandomStreams.stream(seed, generationNum(), child);
 	}
 
 	/**
@@ -97,19 +198,23 @@ public class Trainer {
 		if (generationRelativeFitness.containsKey(generationNum))
 			return generationRelativeFitness.get(generationNum);
 
-		generationHistory.get(generationNum).clearStats();
-
+		ChessNet net = getGenerationBest(generationNum);
+		net.clearStats();
 		for (int i = 0; i < generationNum; i++) {
-			new TrainingGame(generationHistory.get(generationNum), generationHistory.get(i)).completeGame();
-			new TrainingGame(generationHistory.get(i), generationHistory.get(generationNum)).completeGame();
+			ChessNet opponent = readGeneration(i);
+			new TrainingGame(net, opponent).completeGame();
+			new TrainingGame(opponent, net).completeGame();
+			saveStats(i, opponent);
 		}
 
-		generationRelativeFitness.put(generationNum, generationHistory.get(generationNum).getStats());
+		generationRelativeFitness.put(generationNum, net.getStats());
 		return generationRelativeFitness.get(generationNum);
 	}
 
 	/**
-	 * Gets the generation best.
+	 * Gets the generation best. While the net is still in the population this is
+	 * the net itself; once it has left, it is read back from the history with the
+	 * stats it had.
 	 *
 	 * @param generationNum
 	 *            the generation num
@@ -118,7 +223,29 @@ public class Trainer {
 	public ChessNet getGenerationBest(int generationNum) {
 		if (generationNum > generationHistory.size() - 1)
 			return null;
-		return generationHistory.get(generationNum);
+		if (liveBest.get(generationNum) != null)
+			return liveBest.get(generationNum);
+		if (generationNum != lastBestNum) {
+			if (lastBest != null)
+				saveStats(lastBestNum, lastBest);
+			lastBest = readGeneration(generationNum);
+			lastBestNum = generationNum;
+		}
+		return lastBest;
+	}
+
+	// Get the best net of a generation, reading it from the history with its
+	// stats if it has left the population
+	private ChessNet readGeneration(int generationNum) {
+		if (liveBest.get(generationNum) != null)
+			return liveBest.get(generationNum);
+		return new ChessNet(generationHistory.get(generationNum), archivedBestStats.get(generationNum));
+	}
+
+	// Keep the stats of a generation best read back from the history
+	private void saveStats(int generationNum, ChessNet net) {
+		if (liveBest.get(generationNum) == null)
+			archivedBestStats.set(generationNum, net.getStatCounts());
 	}
 
 	/**
@@ -149,6 +276,38 @@ public class Trainer {
 		return bestFitness.get(generationNum);
 	}
 
+	/**
+	 * Score every net in the current generation on a fixed set of positions with
+	 * known best moves. The generation is stacked so each position is scored by
+	 * the whole generation at once.
+	 *
+	 * @param positions
+	 *            the positions to score
+	 * @param bestMoves
+	 *            the best move in each position
+	 * @return the number of positions where each net chose the best move
+	 * @throws IllegalStateException
+	 *             if the generation has been run but not yet mutated
+	 */
+	public int[] scoreTestSuite(List<Position> positions, List<Move> bestMoves) {
+		for (ChessNet net : generation) {
+			if (net == null)
+				throw new IllegalStateException("The generation must be mutated before it is scored");
+		}
+
+		StackedNet stack = ChessNet.stack(generation);
+		MoveContext context = MoveContext.current();
+		int[] scores = new int[generation.length];
+		for (int i = 0; i < positions.size(); i++) {
+			Move[] moves = ChessNet.getMoves(stack, positions.get(i), context);
+			for (int k = 0; k < moves.length; k++) {
+				if (bestMoves.get(i).equals(moves[k]))
+					scores[k]++;
+			}
+		}
+		return scores;
+	}
+
 	/**
 	 * Run the current generation to completion.
 	 *
@@ -184,28 +343,22 @@ public class Trainer {
 		TrainingGame[] generationGames = new TrainingGame[gameList.size()];
 		generationGames = gameList.toArray(generationGames);
 
-		// Run all games to completion
-		for (int i = 0; i < threadNum; i++) {
-			runGamesThreadded(generationGames, i, threadNum);
-		}
-		int gamesLeft;
-		int printRate = 50;
-		int count = 0;
-		do {
+		// Run all games to completion, printing the progress every few seconds
+		CompletableFuture<Void> games = playGames(generationGames, threadNum);
+		boolean done = false;
+		while (!done) {
 			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {}
-			gamesLeft = 0;
-			for (int i = 0; i < generationGames.length; i++) {
-				if (!generationGames[i].gameFinished())
-					gamesLeft++;
+				games.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				done = true;
+			} catch (TimeoutException e) {
+				System.out.print(String.format("%.2f", ((double) gamesFinished.sum()) / generationGames.length * 100) + "% ");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while running the generation", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("A game failed", e.getCause());
 			}
-			count++;
-			if (count == printRate) {
-				System.out.print(String.format("%.2f", (1 - ((double) gamesLeft) / generationGames.length) * 100) + "% ");
-				count = 0;
-			}
-		} while (gamesLeft > 0);
+		}
 		System.out.println();
 
 		// Find most fit
@@ -222,7 +375,9 @@ public class Trainer {
 			generation[topIndex] = null;
 		}
 
-		generationHistory.add(top[0]);
+		generationHistory.add(top[0].getNet());
+		liveBest.add(top[0]);
+		archivedBestStats.add(null);
 		bestFitness.add(top[0].getStats());
 		double[] generationFitness = new double[top[0].getStats().length];
 		for (int i = 0; i < top.length; i++) {
@@ -243,34 +398,171 @@ public class Trainer {
 	}
 
 	/**
-	 * Mutate to a new generation.
+	 * Mutate to a new generation. The new nets are made in parallel on the same
+	 * threads the games were played on, each with its own random stream, so the
+	 * result does not depend on how the work is scheduled.
 	 *
 	 * @param mp
 	 *            the mutation parameter
 	 */
 	public void mutateGeneration(MutationParameter mp) {
-		for (int i = 0; i < best.length; i++) {
-			generation[i] = best[i];
+		ForkJoinPool workers = this.workers != null ? this.workers : workers(Runtime.getRuntime().availableProcessors());
+		ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int i = 0; i < generation.length; i++) {
+			int child = i;
+			tasks.add(workers.submit(() -> {
+				generation[child] = makeChild(child, mp);
+			}));
 		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+
+		// Generation bests which were not kept now live only in the history
+		for (int i = 0; i < liveBest.size(); i++) {
+			if (liveBest.get(i) != null && !Arrays.asList(generation).contains(liveBest.get(i))) {
+				archivedBestStats.set(i, liveBest.get(i).getStatCounts());
+				liveBest.set(i, null);
+			}
+		}
+	}
 
-		for (int i = best.length; i < Math.ceil(generation.length * (1 - randomPercent)); i++) {
-			int index = (int) (Math.random() * best.length);
-			generation[i] = best[index].getMutatedCopy(mp);
+	// Make the net for a place in the new generation: an elite net, a mutated
+	// copy of one, or a random net if the place is empty
+	private ChessNet makeChild(int child, MutationParameter mp) {
+		if (child < best.length)
+			return best[child];
+
+		RandomGenerator random = childRandom(child);
+		if (child < Math.ceil(generation.length * (1 - randomPercent)))
+			return best[random.nextInt(best.length)].getMutatedCopy(mp, random);
+		if (generation[child] == null)
+			return new ChessNet(random);
+		return generation[child];
+	}
+
+	// Get the worker pool, making a new one if the number of threads has changed
+	private ForkJoinPool workers(int threadNum) {
+		if (workers == null || workers.getParallelism() != threadNum) {
+			if (workers != null)
+				workers.shutdown();
+			workers = new ForkJoinPool(threadNum);
 		}
+		return workers;
+	}
 
-		for (int i = 0; i < generation.length; i++) {
-			if (generation[i] == null)
-				generation[i] = new ChessNet();
+	// Look up Executors.newVirtualThreadPerTaskExecutor, which is only present on
+	// runtimes with virtual threads
+	private static Method findVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
 		}
 	}
 
-	// Run the games on a fixed interval
-	private void runGamesThreadded(TrainingGame[] games, int start, int increment) {
-		new Thread() {
-			public void run() {
-				for (int i = start; i < games.length; i += increment)
-					games[i].completeGameThreadSafe();
+	// Make an executor with a new virtual thread for each task, or null if the
+	// runtime has no virtual threads
+	private static ExecutorService newVirtualExecutor() {
+		if (NEW_VIRTUAL_EXECUTOR == null)
+			return null;
+		try {
+			return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check whether this runtime can run games on virtual threads.
+	 *
+	 * @return true, if virtual threads are available
+	 */
+	public static boolean virtualThreadsAvailable() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Set whether each game is played on its own virtual thread. The games share
+	 * one move context per processor, and take one while a net chooses a move or
+	 * legal moves are generated, so at most one game per processor does either
+	 * at once. A game waiting for a context parks its virtual thread without
+	 * holding a platform thread, move buffers or a move generator, and the thread
+	 * count passed to {@link #runGeneration(int, int, boolean, boolean, int)} is
+	 * ignored. If the runtime has no virtual threads, games are played on a pool
+	 * of one platform thread per processor instead.
+	 *
+	 * @param virtualThreads
+	 *            whether to play games on virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Check whether games are played on virtual threads.
+	 *
+	 * @return true, if virtual thread mode is set
+	 * @see #setVirtualThreads(boolean)
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Play a set of games to completion on the worker threads. Each game is a
+	 * separate task, so idle threads take the next waiting game rather than
+	 * following a fixed assignment. Progress can be followed with
+	 * {@link #gamesFinished()}.
+	 *
+	 * @param games
+	 *            the games to play
+	 * @param threadNum
+	 *            the number of threads to use, which is ignored in virtual thread
+	 *            mode
+	 * @return a future which completes when every game has finished
+	 */
+	public CompletableFuture<Void> playGames(TrainingGame[] games, int threadNum) {
+		gamesFinished.reset();
+		int processors = Runtime.getRuntime().availableProcessors();
+		ExecutorService virtual = virtualThreads ? newVirtualExecutor() : null;
+		if (virtual == null) {
+			Executor workers = workers(virtualThreads ? processors : threadNum);
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[games.length];
+			for (int i = 0; i < games.length; i++) {
+				TrainingGame game = games[i];
+				futures[i] = CompletableFuture.runAsync(() -> {
+					game.completeGameThreadSafe();
+					gamesFinished.increment();
+				}, workers);
 			}
-		}.start();
+			return CompletableFuture.allOf(futures);
+		}
+
+		// One virtual thread per game, with a move context per processor which the
+		// games take turns with to choose and generate moves
+		BlockingQueue<MoveContext> contexts = new ArrayBlockingQueue<MoveContext>(processors);
+		for (int i = 0; i < processors; i++)
+			contexts.add(new MoveContext());
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[games.length];
+		for (int i = 0; i < games.length; i++) {
+			TrainingGame game = games[i];
+			game.shareMoveContexts(contexts);
+			futures[i] = CompletableFuture.runAsync(() -> {
+				game.completeGameThreadSafe();
+				gamesFinished.increment();
+			}, virtual);
+		}
+		virtual.shutdown();
+		return CompletableFuture.allOf(futures);
+	}
+
+	/**
+	 * Get the number of games finished since the last call to
+	 * {@link #playGames(TrainingGame[], int)}.
+	 *
+	 * @return the number of finished games
+	 */
+	public long gamesFinished() {
+		return gamesFinished.sum();
 	}
 }
@@ -1,10 +1,12 @@
 package ca.daviddwhite.deep_chess;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
 
 import org.petero.cuckoo.engine.chess.Game;
 import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.MovePlayer;
 import org.petero.cuckoo.engine.chess.Piece;
 import org.petero.cuckoo.engine.chess.Player;
 import org.petero.cuckoo.engine.chess.Position;
@@ -15,8 +17,17 @@ import org.petero.cuckoo.engine.chess.UndoInfo;
  * The Class TrainingGame hosts a game between two ChessNet instances.
  */
 public class TrainingGame extends Game {
-	// The position history stored as the number of occurrences of each state.
-	private HashMap<Long, Integer> posOccurrences = new HashMap<Long, Integer>();
+	// How often each position since the last pawn move or capture has occurred,
+	// in an open addressed table keyed by zobrist hash. No earlier position can
+	// occur again, so the table is cleared on those moves. A count of 0 marks an
+	// empty slot, and the used slots are listed so clearing only touches them.
+	private long[] repHashes = new long[64];
+	private int[] repCounts = new int[64];
+	private int[] repSlots = new int[32];
+	private int repSize;
+
+	// Has the last move repeated a position for the third time
+	private boolean threefold;
 
 	// The position history for the 50 move rule
 	private ArrayList<Position> history;
@@ -24,6 +35,13 @@ public class TrainingGame extends Game {
 	// Has the game finished yet
 	private boolean gameFinished;
 
+	// The state the game finished in, or null while it is being played
+	private GameState finalState;
+
+	// The move contexts this game takes turns with, shared with other games, or
+	// null to use the context of the current thread
+	private BlockingQueue<MoveContext> moveContexts;
+
 	/**
 	 * Instantiates a new training game.
 	 *
@@ -35,7 +53,6 @@ public class TrainingGame extends Game {
 	public TrainingGame(Player whitePlayer, Player blackPlayer) {
 		super(whitePlayer, blackPlayer);
 		history = new ArrayList<Position>();
-		posOccurrences = new HashMap<Long, Integer>();
 	}
 
 	/*
@@ -57,8 +74,29 @@ public class TrainingGame extends Game {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.petero.cuckoo.engine.chess.Game#processMove(org.petero.cuckoo.engine.
+	 * chess.Move)
+	 */
+	@Override
+	public boolean processMove(Move m) {
+		if (!isLegalMove(m))
+			return false;
+
+		// The move may be from a list which is reused
+		makeMove(new Move(m));
+
+		return true;
+	}
+
 	// make a move and calculate draw conditionss
 	private void makeMove(Move m) {
+		// Pawn moves and captures can't be undone, so no earlier position can repeat
+		// and the 50 move count starts again. En passant captures are pawn moves.
+		int fromPiece = pos.getPiece(m.from);
+		boolean irreversible = fromPiece == Piece.WPAWN || fromPiece == Piece.BPAWN || pos.getPiece(m.to) != Piece.EMPTY;
+
 		UndoInfo ui = new UndoInfo();
 		pos.makeMove(m, ui);
 		TextIO.fixupEPSquare(pos);
@@ -73,28 +111,65 @@ public class TrainingGame extends Game {
 		pendingDrawOffer = false;
 		currentMove++;
 
-		// Track draw by 3 fold repition
-		long hash = pos.zobristHash();
-		if (posOccurrences.containsKey(hash))
-			posOccurrences.put(hash, posOccurrences.get(hash) + 1);
-		else
-			posOccurrences.put(hash, 1);
-
 		// Track draw by 50 move rule
-		int movePiece = pos.getPiece(m.from);
-		if (movePiece == Piece.WPAWN || movePiece == Piece.BPAWN || isCaptureMove(m))
+		if (irreversible)
 			history.clear();
 		else
 			history.add(pos);
+
+		// Track draw by 3 fold repition. The hash includes the side to move, so
+		// only positions with the same side to move are counted together.
+		if (irreversible)
+			clearRepetitions();
+		if (countPosition(pos.zobristHash()) >= 3)
+			threefold = true;
 	}
 
-	// Check if the given move captures a piece
-	private boolean isCaptureMove(Move m) {
-		if (pos.getPiece(m.to) == Piece.EMPTY) {
-			int p = pos.getPiece(m.from);
-			return (p == (pos.whiteMove ? Piece.WPAWN : Piece.BPAWN) && m.to == pos.getEpSquare());
+	// Count an occurrence of a position, returning how often it has now occurred
+	private int countPosition(long hash) {
+		int slot = findSlot(repHashes, repCounts, hash);
+		if (repCounts[slot] == 0) {
+			if (repSize == repSlots.length) {
+				growRepetitions();
+				slot = findSlot(repHashes, repCounts, hash);
+			}
+			repHashes[slot] = hash;
+			repSlots[repSize++] = slot;
 		}
-		return true;
+		return ++repCounts[slot];
+	}
+
+	// Find the slot holding a hash, or the empty slot it would go in
+	private static int findSlot(long[] hashes, int[] counts, long hash) {
+		int mask = hashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (counts[slot] != 0 && hashes[slot] != hash)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	// Forget every counted position
+	private void clearRepetitions() {
+		for (int i = 0; i < repSize; i++)
+			repCounts[repSlots[i]] = 0;
+		repSize = 0;
+	}
+
+	// Double the size of the repetition table, keeping it at most half full
+	private void growRepetitions() {
+		long[] hashes = new long[repHashes.length * 2];
+		int[] counts = new int[repCounts.length * 2];
+		int[] slots = new int[repSlots.length * 2];
+		for (int i = 0; i < repSize; i++) {
+			long hash = repHashes[repSlots[i]];
+			int slot = findSlot(hashes, counts, hash);
+			hashes[slot] = hash;
+			counts[slot] = repCounts[repSlots[i]];
+			slots[i] = slot;
+		}
+		repHashes = hashes;
+		repCounts = counts;
+		repSlots = slots;
 	}
 
 	/**
@@ -102,38 +177,91 @@ public class TrainingGame extends Game {
 	 */
 	public void completeGame() {
 		while (getGameState() == GameState.ALIVE) {
-			processString(whitePlayer.getCommand(pos, false, history));
+			playTurn(whitePlayer);
 			if (getGameState() != GameState.ALIVE)
 				break;
-			processString(blackPlayer.getCommand(pos, false, history));
+			playTurn(blackPlayer);
 		}
+		finalState = getGameState();
 		if (whitePlayer instanceof ChessNet)
 			((ChessNet) whitePlayer).addGameStat(getFitness(true), true, getGameState());
 		if (blackPlayer instanceof ChessNet)
 			((ChessNet) blackPlayer).addGameStat(getFitness(false), false, getGameState());
+		// The final state is kept, so the legal moves are no longer needed
+		releaseLegalMoves();
 		gameFinished = true;
 	}
 
-	/**
-	 * A thread safe version of completeGame which has more overhead.
-	 */
-	public void completeGameThreadSafe() {
-		Player tempWhite = whitePlayer instanceof ChessNet ? new ChessNet((ChessNet) whitePlayer) : whitePlayer;
-		Player tempBlack = blackPlayer instanceof ChessNet ? new ChessNet((ChessNet) blackPlayer) : blackPlayer;
+	// Play the next move of a player. Players which choose moves directly are
+	// handed the legal moves the game state was checked with.
+	private void playTurn(Player player) {
+		if (player instanceof ChessNet && moveContexts != null) {
+			// The chosen move lives in the context, so it is made before the
+			// context is handed back
+			MoveGen.MoveList moves = getLegalMoves();
+			MoveContext context = takeMoveContext();
+			try {
+				processMove(((ChessNet) player).getMove(pos, moves, context));
+			} finally {
+				moveContexts.add(context);
+			}
+		} else if (player instanceof MovePlayer)
+			processMove(((MovePlayer) player).getMove(pos, getLegalMoves(), false, history));
+		else
+			processString(player.getCommand(pos, false, history));
+	}
 
-		while (getGameState() == GameState.ALIVE) {
-			processString(tempWhite.getCommand(pos, false, history));
-			if (getGameState() != GameState.ALIVE)
-				break;
-			processString(tempBlack.getCommand(pos, false, history));
-		}
-		if (whitePlayer instanceof ChessNet) {
-			((ChessNet) whitePlayer).addGameStat(getFitness(true), true, getGameState());
+	/*
+	 * (non-Javadoc)
+	 * @see org.petero.cuckoo.engine.chess.Game#getLegalMoves()
+	 */
+	@Override
+	public MoveGen.MoveList getLegalMoves() {
+		// With shared contexts, moves are generated with the move generator of a
+		// context so no thread needs one of its own
+		if (moveContexts != null && !haveLegalMoves()) {
+			MoveContext context = takeMoveContext();
+			try {
+				generateLegalMoves(context.moveGen);
+			} finally {
+				moveContexts.add(context);
+			}
 		}
-		if (blackPlayer instanceof ChessNet) {
-			((ChessNet) blackPlayer).addGameStat(getFitness(false), false, getGameState());
+		return super.getLegalMoves();
+	}
+
+	// Take a shared move context, waiting until one is free
+	private MoveContext takeMoveContext() {
+		try {
+			return moveContexts.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a move context", e);
 		}
-		gameFinished = true;
+	}
+
+	/**
+	 * Share a set of move contexts with other games. The game takes a context
+	 * while a ChessNet chooses its move and while legal moves are generated,
+	 * waiting while every context is in use, and hands it back straight after.
+	 * The number of contexts limits how many games do either at once, and a
+	 * waiting game holds no move buffers or move generator. Other players take
+	 * their turns without a context.
+	 *
+	 * @param contexts
+	 *            the shared move contexts, or null to use the context of the
+	 *            current thread
+	 */
+	public void shareMoveContexts(BlockingQueue<MoveContext> contexts) {
+		this.moveContexts = contexts;
+	}
+
+	/**
+	 * A thread safe version of completeGame. ChessNets can play any number of
+	 * games at once, so this is now the same as completeGame.
+	 */
+	public void completeGameThreadSafe() {
+		completeGame();
 	}
 
 	/**
@@ -144,26 +272,27 @@ public class TrainingGame extends Game {
 	}
 
 	/**
-	 * Gets the fitness of the given net for this game.
+	 * Gets the fitness of the given net for this game. StrictMath is used so that
+	 * a seeded run scores games the same on every JVM.
 	 *
 	 * @param net
 	 *            the ChessNet to check
 	 * @return the fitness of the ChessNet
 	 */
 	public double getFitness(boolean white) {
-		double turnVal = Math.tanh(pos.fullMoveCounter / 30.0);
+		double turnVal = StrictMath.tanh(pos.fullMoveCounter / 30.0);
 		switch (getGameState()) {
 		case WHITE_MATE:
 		case RESIGN_BLACK:
-			return white ? 2 * Math.tanh((double) pos.wMtrl / (double) pos.bMtrl) : 0.5 * Math.tanh((double) pos.bMtrl / (double) pos.wMtrl) * turnVal;
+			return white ? 2 * StrictMath.tanh((double) pos.wMtrl / (double) pos.bMtrl) : 0.5 * StrictMath.tanh((double) pos.bMtrl / (double) pos.wMtrl) * turnVal;
 		case BLACK_MATE:
 		case RESIGN_WHITE:
-			return white ? 0.5 * Math.tanh((double) pos.wMtrl / (double) pos.bMtrl) * turnVal : 2 * Math.tanh((double) pos.bMtrl / (double) pos.wMtrl);
+			return white ? 0.5 * StrictMath.tanh((double) pos.wMtrl / (double) pos.bMtrl) * turnVal : 2 * StrictMath.tanh((double) pos.bMtrl / (double) pos.wMtrl);
 		case BLACK_STALEMATE:
 		case WHITE_STALEMATE:
 		case DRAW_50:
 		case DRAW_REP:
-			return white ? Math.tanh((double) pos.wMtrl / (double) pos.bMtrl) * turnVal : Math.tanh((double) pos.bMtrl / (double) pos.wMtrl) * turnVal;
+			return white ? StrictMath.tanh((double) pos.wMtrl / (double) pos.bMtrl) * turnVal : StrictMath.tanh((double) pos.bMtrl / (double) pos.wMtrl) * turnVal;
 		default:
 			return 0;
 		}
@@ -175,13 +304,12 @@ public class TrainingGame extends Game {
 	 */
 	@Override
 	public GameState getGameState() {
-		if (history.size() >= 50) {
+		if (finalState != null) {
+			return finalState;
+		} else if (history.size() >= 50) {
 			return GameState.DRAW_50;
-		} else {
-			for (int i : posOccurrences.values()) {
-				if (i >= 3)
-					return GameState.DRAW_REP;
-			}
+		} else if (threefold) {
+			return GameState.DRAW_REP;
 		}
 		return super.getGameState();
 	}
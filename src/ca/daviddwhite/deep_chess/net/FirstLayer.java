@@ -0,0 +1,44 @@
+package ca.daviddwhite.deep_chess.net;
+
+/**
+ * The first hidden layer of a net, seen as a set of weight columns which can be
+ * summed for sparse inputs and updated incrementally as inputs change.
+ */
+public interface FirstLayer {
+
+	/**
+	 * Get the number of neurons in the first hidden layer.
+	 *
+	 * @return the size of the first hidden layer
+	 */
+	int getFirstLayerSize();
+
+	/**
+	 * Calculate the first hidden layer sums before activation for a sparse input.
+	 * Only the listed inputs are non-zero, with a value of 1 or -1.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @param firstLayerSums
+	 *            the array to write the first hidden layer sums to
+	 */
+	void firstLayerSparse(int[] indices, int[] signs, int count, double[] firstLayerSums);
+
+	/**
+	 * Add the first layer weights of a single input neuron, multiplied by a
+	 * scale, to a set of first hidden layer sums.
+	 *
+	 * @param firstLayerSums
+	 *            the first hidden layer sums to update
+	 * @param input
+	 *            the index of the input neuron
+	 * @param scale
+	 *            the change in value of the input neuron
+	 */
+	void addInputColumn(double[] firstLayerSums, int input, double scale);
+}
@@ -0,0 +1,88 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.util.Arrays;
+
+/**
+ * The Class InferenceContext holds the working values used while evaluating a
+ * NeuralNet or QuantizedNet, so the nets themselves only hold their parameters
+ * and can be evaluated by any number of threads at once. A context must only be
+ * used by one thread at a time, but can be used with nets of any topology; its
+ * buffers grow to fit the largest net evaluated with it.
+ */
+public class InferenceContext {
+	// The context of each thread, used when no context is given
+	private static final ThreadLocal<InferenceContext> CURRENT = ThreadLocal.withInitial(InferenceContext::new);
+
+	/**
+	 * Gets the context owned by the current thread.
+	 *
+	 * @return the context of the current thread
+	 */
+	public static InferenceContext current() {
+		return CURRENT.get();
+	}
+
+	// Activation values for each layer
+	double[][] single = new double[0][];
+
+	// Activation values for each layer of a batch, stored row-major as
+	// [sample][neuron]
+	double[][] batch = new double[0][];
+
+	// Working values for quantized nets
+	short[] quantizedSums = new short[0];
+	byte[][] quantizedHidden = new byte[0][];
+	double[] quantizedOutputs = new double[0];
+
+	// The first layer sums of one net gathered from a stack
+	double[] gather = new double[0];
+
+	// Make sure the activation buffers can hold the given layer sizes. The output
+	// buffer is kept at exactly the output size since it is returned to callers.
+	double[][] fit(int[] layerSizes) {
+		single = grow(single, layerSizes, 1);
+		int last = layerSizes.length - 1;
+		if (single[last].length != layerSizes[last])
+			single[last] = new double[layerSizes[last]];
+		return single;
+	}
+
+	// Make sure the batch buffers can hold the given number of samples
+	double[][] fitBatch(int[] layerSizes, int count) {
+		batch = grow(batch, layerSizes, count);
+		return batch;
+	}
+
+	// Make sure the quantized buffers can hold the given layer sizes, with the
+	// output buffer at exactly the output size
+	void fitQuantized(int[] layerSizes) {
+		if (quantizedSums.length < layerSizes[1])
+			quantizedSums = new short[layerSizes[1]];
+		if (quantizedHidden.length < layerSizes.length - 2)
+			quantizedHidden = Arrays.copyOf(quantizedHidden, layerSizes.length - 2);
+		for (int i = 0; i < layerSizes.length - 2; i++) {
+			if (quantizedHidden[i] == null || quantizedHidden[i].length < layerSizes[i + 1])
+				quantizedHidden[i] = new byte[layerSizes[i + 1]];
+		}
+		if (quantizedOutputs.length != layerSizes[layerSizes.length - 1])
+			quantizedOutputs = new double[layerSizes[layerSizes.length - 1]];
+	}
+
+	// Make sure the gather buffer can hold the given number of values
+	double[] fitGather(int size) {
+		if (gather.length < size)
+			gather = new double[size];
+		return gather;
+	}
+
+	// Grow a set of layer buffers to hold a number of samples of each layer
+	private static double[][] grow(double[][] buffers, int[] layerSizes, int count) {
+		if (buffers.length < layerSizes.length)
+			buffers = Arrays.copyOf(buffers, layerSizes.length);
+		for (int i = 0; i < layerSizes.length; i++) {
+			if (buffers[i] == null || buffers[i].length < count * layerSizes[i])
+				buffers[i] = new double[count * layerSizes[i]];
+		}
+		return buffers;
+	}
+}
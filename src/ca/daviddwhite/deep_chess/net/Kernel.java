@@ -0,0 +1,76 @@
+package ca.daviddwhite.deep_chess.net;
+
+/**
+ * The numeric kernels used for forward propagation. A SIMD implementation is
+ * used when the jdk.incubator.vector module is available, otherwise a scalar
+ * implementation which gives bit-identical results is used.
+ */
+abstract class Kernel {
+
+	/**
+	 * The number of partial sums a dot product is split into. Element i of a dot
+	 * product is always added to partial sum i % LANES, and the partial sums are
+	 * combined pairwise, so every implementation rounds identically.
+	 */
+	static final int LANES = 8;
+
+	/** The kernel selected for this JVM. */
+	static final Kernel INSTANCE = select();
+
+	// Use the vector kernel if it can be loaded, unless disabled
+	private static Kernel select() {
+		if (!Boolean.parseBoolean(System.getProperty("deepchess.simd", "true")))
+			return new ScalarKernel();
+		try {
+			return (Kernel) Class.forName("ca.daviddwhite.deep_chess.net.VectorKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new ScalarKernel();
+		}
+	}
+
+	/**
+	 * Calculate the dot product of two vectors.
+	 *
+	 * @param a
+	 *            the array holding the first vector
+	 * @param aOffset
+	 *            the start of the first vector
+	 * @param b
+	 *            the array holding the second vector
+	 * @param bOffset
+	 *            the start of the second vector
+	 * @param length
+	 *            the length of both vectors
+	 * @return the dot product
+	 */
+	abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+	/**
+	 * Add a scaled vector to a target vector.
+	 *
+	 * @param target
+	 *            the vector to add to, starting at index 0
+	 * @param source
+	 *            the array holding the vector to add
+	 * @param sourceOffset
+	 *            the start of the vector to add
+	 * @param length
+	 *            the length of both vectors
+	 * @param scale
+	 *            the value to multiply the added vector by
+	 */
+	abstract void addScaled(double[] target, double[] source, int sourceOffset, int length, double scale);
+
+	/**
+	 * Apply {@link Sigmoid#rootSigmoid(double, double)} with a compression of 1 to
+	 * each value of a vector in place.
+	 *
+	 * @param values
+	 *            the array holding the vector
+	 * @param offset
+	 *            the start of the vector
+	 * @param length
+	 *            the length of the vector
+	 */
+	abstract void rootSigmoid(double[] values, int offset, int length);
+}
@@ -0,0 +1,124 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * The Class NetArchive stores frozen nets off the Java heap. Nets are written in
+ * the binary net format into large direct buffers, so an archive of thousands of
+ * nets costs the garbage collector a handful of objects rather than thousands
+ * of weight arrays. A stored net is read back into a new NeuralNet when it is
+ * needed.
+ * <p>
+ * The archive only grows. Stored nets are kept until the archive itself is
+ * discarded, which suits a history of nets that is never pruned.
+ */
+public class NetArchive {
+	/** The default size in bytes of each buffer. */
+	public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+	/**
+	 * The location of a stored net.
+	 */
+	private static class Entry {
+		final ByteBuffer buffer;
+		final int offset, length;
+
+		Entry(ByteBuffer buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	// The size of each buffer, unless a net is larger
+	private final int chunkSize;
+
+	// The buffer new nets are written to
+	private ByteBuffer current;
+	// The number of bytes allocated for all buffers
+	private long capacity;
+
+	// The stored nets by handle
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Instantiates a new net archive with the default buffer size.
+	 */
+	public NetArchive() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Instantiates a new net archive.
+	 *
+	 * @param chunkSize
+	 *            the size in bytes of each buffer
+	 */
+	public NetArchive(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Store a copy of a net in the archive.
+	 *
+	 * @param net
+	 *            the net to store
+	 * @return the handle of the stored net, which is the number of nets stored
+	 *         before it
+	 */
+	public synchronized int add(NeuralNet net) {
+		int length = net.binarySize(false);
+		if (current == null || current.remaining() < length) {
+			current = ByteBuffer.allocateDirect(Math.max(chunkSize, length));
+			capacity += current.capacity();
+		}
+
+		int offset = current.position();
+		net.writeBinary(current, false);
+		entries.add(new Entry(current, offset, length));
+		return entries.size() - 1;
+	}
+
+	/**
+	 * Read a stored net back into a new neural net.
+	 *
+	 * @param handle
+	 *            the handle of the stored net
+	 * @return a new neural net with the stored weights
+	 */
+	public synchronized NeuralNet get(int handle) {
+		if (handle < 0 || handle >= entries.size())
+			throw new IllegalArgumentException("No net is stored with handle " + handle);
+		Entry entry = entries.get(handle);
+		ByteBuffer view = entry.buffer.duplicate();
+		view.limit(entry.offset + entry.length).position(entry.offset);
+		try {
+			return NeuralNet.readBinary(view.slice());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Get the number of nets stored in the archive.
+	 *
+	 * @return the number of stored nets
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of bytes allocated off the heap by the archive.
+	 *
+	 * @return the allocated bytes
+	 */
+	public synchronized long capacity() {
+		return capacity;
+	}
+}
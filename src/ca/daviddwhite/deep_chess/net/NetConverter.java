@@ -0,0 +1,45 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The Class NetConverter converts neural net files between the text and binary
+ * formats.
+ * <p>
+ * Usage: NetConverter [-float] &lt;input file&gt; &lt;output file&gt;. The
+ * input format is detected automatically. The output is written as text if the
+ * output file name ends in ".txt", otherwise it is written in the binary
+ * format, with single precision weights if -float is given.
+ */
+public class NetConverter {
+
+	public static void main(String[] args) throws IOException {
+		boolean singlePrecision = args.length > 0 && args[0].equals("-float");
+		int first = singlePrecision ? 1 : 0;
+		if (args.length - first != 2) {
+			System.out.println("Usage: NetConverter [-float] <input file> <output file>");
+			return;
+		}
+
+		NeuralNet net = NeuralNet.load(new File(args[first]));
+
+		String outName = args[first + 1];
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outName));
+		try {
+			if (outName.endsWith(".txt")) {
+				PrintStream ps = new PrintStream(out);
+				net.printNet(ps);
+				ps.flush();
+			} else {
+				net.writeBinary(out, singlePrecision);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
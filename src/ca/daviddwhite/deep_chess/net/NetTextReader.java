@@ -0,0 +1,154 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A single pass reader for the text net format written by
+ * {@link NeuralNet#printNet(java.io.PrintStream)}. Layers are separated by ';',
+ * neurons by ':' and weights by ','. Weights are parsed straight from a byte
+ * buffer into one growing array per layer, so the file is never held in memory
+ * as text. Each weight is gathered into one reused buffer and parsed with
+ * {@link Double#parseDouble(String)}.
+ */
+class NetTextReader {
+	// The stream and its read buffer
+	private InputStream in;
+	private byte[] buffer = new byte[1 << 16];
+	private int bufferPos, bufferEnd;
+
+	// The characters of the current weight
+	private final StringBuilder token = new StringBuilder(32);
+
+	// The layer sizes from the input layer to the output layer
+	private int[] layerSizes = new int[8];
+	private int layerNum;
+
+	// The weights of each connection layer
+	private double[][] weights = new double[8][];
+
+	/**
+	 * Instantiates a new reader.
+	 *
+	 * @param in
+	 *            the input stream to read from
+	 */
+	NetTextReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Read the net from the stream, up to the end of the first line.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void read() throws IOException {
+		double[] layer = new double[1024];
+		int layerLength = 0;
+		int neuronNum = 0, neuronLength = 0, backSize = -1;
+
+		while (true) {
+			int c = readToken();
+			layer = ensureCapacity(layer, layerLength + 1);
+			layer[layerLength++] = parseToken();
+			neuronLength++;
+
+			if (c == ',')
+				continue;
+
+			// Every neuron in a layer must connect to the whole previous layer
+			neuronNum++;
+			if (backSize < 0)
+				backSize = neuronLength;
+			else if (neuronLength != backSize)
+				throw new IllegalArgumentException("Neuron " + neuronNum + " of layer " + layerNum + " has " + neuronLength + " weights, expected " + backSize);
+			neuronLength = 0;
+
+			if (c == ':')
+				continue;
+
+			// End of a layer
+			if (layerNum == 0)
+				addLayerSize(backSize);
+			else if (layerSizes[layerNum - 1] != backSize)
+				throw new IllegalArgumentException("Layer " + layerNum + " has " + backSize + " weights per neuron, expected " + layerSizes[layerNum - 1]);
+			if (layerNum - 1 == weights.length)
+				weights = Arrays.copyOf(weights, weights.length * 2);
+			weights[layerNum - 1] = Arrays.copyOf(layer, layerLength);
+			addLayerSize(neuronNum);
+			layerLength = 0;
+			neuronNum = 0;
+			backSize = -1;
+
+			if (c != ';')
+				break;
+		}
+
+		if (layerNum < 3)
+			throw new IllegalArgumentException("A net needs an input, output and at least one hidden layer");
+	}
+
+	/**
+	 * Gets the layer sizes read, from the input layer to the output layer.
+	 *
+	 * @return the layer sizes
+	 */
+	int[] getLayerSizes() {
+		return Arrays.copyOf(layerSizes, layerNum);
+	}
+
+	/**
+	 * Gets the weights read, stored row-major as [front neuron][back neuron] for
+	 * each connection layer.
+	 *
+	 * @return the weights
+	 */
+	double[][] getWeights() {
+		return Arrays.copyOf(weights, layerNum - 1);
+	}
+
+	// Add a layer size to the list
+	private void addLayerSize(int size) {
+		if (layerNum == layerSizes.length)
+			layerSizes = Arrays.copyOf(layerSizes, layerNum * 2);
+		layerSizes[layerNum++] = size;
+	}
+
+	// Grow an array to at least the given capacity
+	private static double[] ensureCapacity(double[] array, int capacity) {
+		if (array.length >= capacity)
+			return array;
+		return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+
+	// Read characters into the token until a separator, returning the separator
+	// or -1 for the end of the line
+	private int readToken() throws IOException {
+		token.setLength(0);
+		while (true) {
+			if (bufferPos == bufferEnd) {
+				bufferEnd = in.read(buffer, 0, buffer.length);
+				bufferPos = 0;
+				if (bufferEnd <= 0) {
+					bufferEnd = 0;
+					return -1;
+				}
+			}
+			int c = buffer[bufferPos++];
+			if (c == ',' || c == ':' || c == ';')
+				return c;
+			if (c == '\n' || c == '\r')
+				return -1;
+			token.append((char) c);
+		}
+	}
+
+	// Parse the current token as a weight
+	private double parseToken() {
+		if (token.length() == 0)
+			throw new IllegalArgumentException("Missing weight in layer " + layerNum);
+		return Double.parseDouble(token.toString());
+	}
+}
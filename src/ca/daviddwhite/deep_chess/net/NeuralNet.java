@@ -1,27 +1,59 @@
 package ca.daviddwhite.deep_chess.net;
 
 import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import ca.daviddwhite.deep_chess.net.Neuron.Synapse;
 import processing.core.PApplet;
 
 /**
- * A basic neural network class with methods for calculation and mutation
+ * A basic neural network class with methods for calculation and mutation.
+ * <p>
+ * The weights are stored as one contiguous row-major matrix per connection
+ * layer. Copies of a net share these matrices, and a matrix is only copied when
+ * one of the nets sharing it mutates it. The net only holds its parameters;
+ * forward propagation keeps its working values in an {@link InferenceContext},
+ * so a net can be evaluated by any number of threads at once as long as it is
+ * not mutated at the same time. The methods without a context parameter use the
+ * context of the current thread.
  */
-public class NeuralNet {
-	// Input Neurons
+public class NeuralNet implements FirstLayer {
+	// Layer sizes, from the input layer through to the output layer
+	private int[] layerSizes;
+	// Weights for each connection layer, stored row-major as [front neuron][back
+	// neuron]. A matrix is never modified while it may be shared with a copy.
+	private double[][] weights;
+	// Whether each weight matrix may be shared with another net
+	private boolean[] shared;
+	// First layer weights, stored column-major as [input neuron][first layer
+	// neuron] so the weights of a single input are contiguous. Shared along with
+	// the first weight matrix.
+	private double[] inputColumns;
+
+	// Neuron graph, only built on demand for the graph API and drawing
 	private Neuron[] inputs;
-	// Hidden Layer Neurons
 	private Neuron[][] hiddenLayers;
-	// Output Nerurons
 	private Neuron[] outputs;
 
 	/**
-	 * Instantiates a new neural net and connects the neurons.
+	 * Instantiates a new neural net with random weights, drawn from the random
+	 * generator of the current thread.
 	 *
 	 * @param inputNum
 	 *            the number of input neurons
@@ -31,119 +63,455 @@ public class NeuralNet {
 	 *            the number of output neurons
 	 */
 	public NeuralNet(int inputNum, int[] hiddenLayerNum, int outputNum) {
-		// Create the Neural Network with empty neurons
-		this.inputs = new Neuron[inputNum];
-		for (int i = 0; i < inputs.length; i++)
-			inputs[i] = new Neuron();
-		this.hiddenLayers = new Neuron[hiddenLayerNum.length][];
-		for (int i = 0; i < this.hiddenLayers.length; i++) {
-			this.hiddenLayers[i] = new Neuron[hiddenLayerNum[i]];
-			for (int j = 0; j < hiddenLayers[i].length; j++)
-				hiddenLayers[i][j] = new Neuron();
-		}
-		this.outputs = new Neuron[outputNum];
-		for (int i = 0; i < outputs.length; i++)
-			outputs[i] = new Neuron();
-
-		// Connect the first layer to the input layer
-		for (Neuron hidden : hiddenLayers[0]) {
-			for (Neuron input : inputs)
-				new Synapse(hidden, input, 2 * Math.random() - 1);
-		}
+		this(inputNum, hiddenLayerNum, outputNum, ThreadLocalRandom.current());
+	}
 
-		// Connect the hidden layers together
-		for (int i = 1; i < hiddenLayers.length; i++) {
-			for (Neuron hiddenFront : hiddenLayers[i]) {
-				for (Neuron hiddenBack : hiddenLayers[i - 1])
-					new Synapse(hiddenFront, hiddenBack, 2 * Math.random() - 1);
-			}
+	/**
+	 * Instantiates a new neural net with weights drawn from a random generator.
+	 *
+	 * @param inputNum
+	 *            the number of input neurons
+	 * @param hiddenLayerNum
+	 *            an array representing the number and size of the hidden layers
+	 * @param outputNum
+	 *            the number of output neurons
+	 * @param random
+	 *            the random generator to draw the weights from
+	 */
+	public NeuralNet(int inputNum, int[] hiddenLayerNum, int outputNum, RandomGenerator random) {
+		int[] sizes = new int[hiddenLayerNum.length + 2];
+		sizes[0] = inputNum;
+		System.arraycopy(hiddenLayerNum, 0, sizes, 1, hiddenLayerNum.length);
+		sizes[sizes.length - 1] = outputNum;
+
+		double[][] w = new double[sizes.length - 1][];
+		for (int l = 0; l < w.length; l++) {
+			w[l] = new double[sizes[l] * sizes[l + 1]];
+			for (int i = 0; i < w[l].length; i++)
+				w[l][i] = 2 * random.nextDouble() - 1;
 		}
 
-		// Connect the output layer to the last hidden layer
-		for (Neuron output : outputs) {
-			for (Neuron hidden : hiddenLayers[hiddenLayers.length - 1])
-				new Synapse(output, hidden, 2 * Math.random() - 1);
-		}
+		build(sizes, w);
 	}
 
 	/**
-	 * Copy Constructor.
+	 * Copy Constructor. The copy shares its weights with the original until
+	 * either of them is mutated.
 	 *
 	 * @param n
 	 *            the NeuralNet to copy
 	 */
 	public NeuralNet(NeuralNet n) {
-		// Copy the neural net structure
-		this.inputs = new Neuron[n.inputs.length];
-		for (int i = 0; i < inputs.length; i++)
-			inputs[i] = new Neuron();
-		this.hiddenLayers = new Neuron[n.hiddenLayers.length][];
-		for (int i = 0; i < this.hiddenLayers.length; i++) {
-			this.hiddenLayers[i] = new Neuron[n.hiddenLayers[i].length];
-			for (int j = 0; j < hiddenLayers[i].length; j++)
-				hiddenLayers[i][j] = new Neuron();
-		}
-		this.outputs = new Neuron[n.outputs.length];
-		for (int i = 0; i < outputs.length; i++)
-			outputs[i] = new Neuron();
+		this.layerSizes = n.layerSizes;
+		this.weights = n.weights.clone();
+		this.inputColumns = n.inputColumns;
+		this.shared = new boolean[weights.length];
+		Arrays.fill(this.shared, true);
+		Arrays.fill(n.shared, true);
+	}
+
+	/**
+	 * Instantiates a new neural net with the given layer sizes and weights.
+	 *
+	 * @param layerSizes
+	 *            the layer sizes, from the input layer to the output layer
+	 * @param weights
+	 *            the weights of each connection layer, stored row-major as [front
+	 *            neuron][back neuron]
+	 */
+	public NeuralNet(int[] layerSizes, double[][] weights) {
+		build(layerSizes, weights);
+	}
 
-		// Copy the weights of the first connection layer
-		for (int i = 0; i < this.hiddenLayers[0].length; i++) {
-			Synapse[] connections = n.hiddenLayers[0][i].getBackConnections();
-			for (int j = 0; j < this.inputs.length; j++)
-				new Synapse(this.hiddenLayers[0][i], this.inputs[j], connections[j].weight);
+	// Set the layer sizes and weights of this net
+	private void build(int[] layerSizes, double[][] weights) {
+		if (layerSizes.length < 3 || weights.length != layerSizes.length - 1)
+			throw new IllegalArgumentException("A net needs an input, output and at least one hidden layer");
+		for (int l = 0; l < weights.length; l++) {
+			if (weights[l].length != layerSizes[l] * layerSizes[l + 1])
+				throw new IllegalArgumentException("Weight layer " + l + " does not match the layer sizes");
 		}
 
-		// Copy the hidden layer connection weights
-		for (int i = 1; i < this.hiddenLayers.length; i++) {
-			for (int j = 0; j < this.hiddenLayers[i].length; j++) {
-				Synapse[] connections = n.hiddenLayers[i][j].getBackConnections();
-				for (int k = 0; k < n.hiddenLayers[i - 1].length; k++)
-					new Synapse(this.hiddenLayers[i][j], this.hiddenLayers[i - 1][k], connections[k].weight);
-			}
+		this.layerSizes = layerSizes.clone();
+		this.weights = weights.clone();
+		this.shared = new boolean[weights.length];
+		buildInputColumns();
+	}
+
+	// Build the column-major first layer from the first weight matrix
+	private void buildInputColumns() {
+		int inputSize = layerSizes[0], firstSize = layerSizes[1];
+		double[] w = weights[0];
+		inputColumns = new double[w.length];
+		for (int j = 0; j < firstSize; j++) {
+			for (int k = 0; k < inputSize; k++)
+				inputColumns[k * firstSize + j] = w[j * inputSize + k];
 		}
+	}
 
-		// Copy the output layer connection weights
-		for (int i = 0; i < this.outputs.length; i++) {
-			Synapse[] connections = n.outputs[i].getBackConnections();
-			for (int j = 0; j < this.hiddenLayers[hiddenLayers.length - 1].length; j++)
-				new Neuron.Synapse(this.outputs[i], this.hiddenLayers[hiddenLayers.length - 1][j], connections[j].weight);
+	// Get a weight matrix which is safe to modify, copying it if it is shared
+	private double[] writableWeights(int layer) {
+		if (shared[layer]) {
+			weights[layer] = weights[layer].clone();
+			shared[layer] = false;
 		}
+		return weights[layer];
 	}
 
 	/**
-	 * Return the input neurons.
+	 * Return the input neurons. The neuron graph is built from the weights on
+	 * demand and is replaced after any mutation.
 	 *
 	 * @return the array of input neurons
 	 */
 	public Neuron[] getInputs() {
+		ensureGraph();
 		return this.inputs;
 	}
 
 	/**
-	 * Gets the output neurons.
+	 * Gets the output neurons. The neuron graph is built from the weights on
+	 * demand and is replaced after any mutation.
 	 *
 	 * @return the array of output neurons
 	 */
 	public Neuron[] getOutputs() {
+		ensureGraph();
 		return this.outputs;
 	}
 
+	// Build the neuron graph from the weights if it does not exist
+	private void ensureGraph() {
+		if (inputs != null)
+			return;
+
+		Neuron[][] layers = new Neuron[layerSizes.length][];
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = new Neuron[layerSizes[i]];
+			for (int j = 0; j < layers[i].length; j++)
+				layers[i][j] = new Neuron();
+		}
+
+		// Connect each layer to the layer behind it
+		for (int l = 0; l < weights.length; l++) {
+			double[] w = weights[l];
+			for (int j = 0; j < layers[l + 1].length; j++) {
+				for (int k = 0; k < layers[l].length; k++)
+					new Synapse(layers[l + 1][j], layers[l][k], w[j * layerSizes[l] + k]);
+			}
+		}
+
+		inputs = layers[0];
+		hiddenLayers = Arrays.copyOfRange(layers, 1, layers.length - 1);
+		outputs = layers[layers.length - 1];
+	}
+
+	/**
+	 * Rebuild the weight matrices from the neuron graph. This must be called if
+	 * synapse weights or connections are modified directly, and before the net is
+	 * mutated, as mutation replaces the graph.
+	 */
+	public void compile() {
+		if (inputs == null)
+			return;
+
+		layerSizes = new int[hiddenLayers.length + 2];
+		layerSizes[0] = inputs.length;
+		for (int i = 0; i < hiddenLayers.length; i++)
+			layerSizes[i + 1] = hiddenLayers[i].length;
+		layerSizes[layerSizes.length - 1] = outputs.length;
+
+		weights = new double[layerSizes.length - 1][];
+		for (int i = 0; i < hiddenLayers.length; i++)
+			weights[i] = compileLayer(hiddenLayers[i], layerSizes[i]);
+		weights[weights.length - 1] = compileLayer(outputs, layerSizes[layerSizes.length - 2]);
+		shared = new boolean[weights.length];
+
+		buildInputColumns();
+	}
+
+	// Copy the back connection weights of a layer into a row-major matrix
+	private static double[] compileLayer(Neuron[] layer, int backSize) {
+		double[] w = new double[layer.length * backSize];
+		for (int j = 0; j < layer.length; j++) {
+			Synapse[] connections = layer[j].getBackConnections();
+			for (int k = 0; k < backSize; k++)
+				w[j * backSize + k] = connections[k].weight;
+		}
+		return w;
+	}
+
 	/**
-	 * Calculate the output values by forward propagation.
+	 * Calculate the output values by forward propagation. The input values are
+	 * read from the input neurons and the results are written back to the hidden
+	 * and output neurons. Since the neuron graph holds the results, this method
+	 * must not be called by more than one thread at a time.
 	 */
 	public void feedForward() {
+		ensureGraph();
+		double[][] values = InferenceContext.current().fit(layerSizes);
+
+		double[] in = values[0];
+		for (int i = 0; i < inputs.length; i++)
+			in[i] = inputs[i].value;
+
+		propagate(values, 0);
+
 		for (int i = 0; i < hiddenLayers.length; i++) {
-			for (Neuron n : hiddenLayers[i])
-				n.feedForward();
+			double[] layer = values[i + 1];
+			for (int j = 0; j < hiddenLayers[i].length; j++)
+				hiddenLayers[i][j].value = layer[j];
+		}
+		double[] out = values[layerSizes.length - 1];
+		for (int i = 0; i < outputs.length; i++)
+			outputs[i].value = out[i];
+	}
+
+	/**
+	 * Calculate the output values for the given inputs by forward propagation,
+	 * without touching the neuron graph.
+	 *
+	 * @param inputValues
+	 *            the input values, one for each input neuron
+	 * @return the output values. The returned array is reused by the next call on
+	 *         the same thread.
+	 */
+	public double[] feedForward(double[] inputValues) {
+		return feedForward(inputValues, InferenceContext.current());
+	}
+
+	/**
+	 * Calculate the output values for the given inputs by forward propagation,
+	 * without touching the neuron graph.
+	 *
+	 * @param inputValues
+	 *            the input values, one for each input neuron
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values. The returned array is reused by the next call
+	 *         with the same context.
+	 */
+	public double[] feedForward(double[] inputValues, InferenceContext context) {
+		double[][] values = context.fit(layerSizes);
+
+		System.arraycopy(inputValues, 0, values[0], 0, layerSizes[0]);
+		propagate(values, 0);
+
+		return values[layerSizes.length - 1];
+	}
+
+	/**
+	 * Calculate the output values for a batch of inputs by forward propagation.
+	 * Each weight row is applied to every sample in the batch before moving on to
+	 * the next, so the weights are only read from memory once per batch.
+	 *
+	 * @param inputValues
+	 *            the input values for every sample, stored row-major as
+	 *            [sample][input neuron]
+	 * @param count
+	 *            the number of samples in the batch
+	 * @return the output values for every sample, stored row-major as
+	 *         [sample][output neuron]. The returned array is reused by the next
+	 *         call on the same thread.
+	 */
+	public double[] feedForward(double[] inputValues, int count) {
+		return feedForward(inputValues, count, InferenceContext.current());
+	}
+
+	/**
+	 * Calculate the output values for a batch of inputs by forward propagation.
+	 *
+	 * @param inputValues
+	 *            the input values for every sample, stored row-major as
+	 *            [sample][input neuron]
+	 * @param count
+	 *            the number of samples in the batch
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values for every sample, stored row-major as
+	 *         [sample][output neuron]. The returned array is reused by the next
+	 *         call with the same context.
+	 */
+	public double[] feedForward(double[] inputValues, int count, InferenceContext context) {
+		double[][] values = context.fitBatch(layerSizes, count);
+
+		System.arraycopy(inputValues, 0, values[0], 0, count * layerSizes[0]);
+		propagateBatch(values, 0, count);
+
+		return values[layerSizes.length - 1];
+	}
+
+	/**
+	 * Calculate the output values for a batch of samples whose first hidden layer
+	 * sums have already been computed, for example by adding weight columns with
+	 * {@link #addInputColumn(double[], int, double)}.
+	 *
+	 * @param firstLayerSums
+	 *            the first hidden layer sums before activation for every sample,
+	 *            stored row-major as [sample][first layer neuron]
+	 * @param count
+	 *            the number of samples in the batch
+	 * @return the output values for every sample, stored row-major as
+	 *         [sample][output neuron]. The returned array is reused by the next
+	 *         call on the same thread.
+	 */
+	public double[] feedForwardFromFirstLayer(double[] firstLayerSums, int count) {
+		return feedForwardFromFirstLayer(firstLayerSums, count, InferenceContext.current());
+	}
+
+	/**
+	 * Calculate the output values for a batch of samples whose first hidden layer
+	 * sums have already been computed.
+	 *
+	 * @param firstLayerSums
+	 *            the first hidden layer sums before activation for every sample,
+	 *            stored row-major as [sample][first layer neuron]
+	 * @param count
+	 *            the number of samples in the batch
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values for every sample, stored row-major as
+	 *         [sample][output neuron]. The returned array is reused by the next
+	 *         call with the same context.
+	 */
+	public double[] feedForwardFromFirstLayer(double[] firstLayerSums, int count, InferenceContext context) {
+		double[][] values = context.fitBatch(layerSizes, count);
+
+		System.arraycopy(firstLayerSums, 0, values[1], 0, count * layerSizes[1]);
+		Kernel.INSTANCE.rootSigmoid(values[1], 0, count * layerSizes[1]);
+		propagateBatch(values, 1, count);
+
+		return values[layerSizes.length - 1];
+	}
+
+	/**
+	 * Calculate the output values for a sparse input by forward propagation. Only
+	 * the listed inputs are non-zero, with a value of 1 or -1, so the first hidden
+	 * layer is calculated by summing their weight columns.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @return the output values. The returned array is reused by the next call on
+	 *         the same thread.
+	 */
+	public double[] feedForwardSparse(int[] indices, int[] signs, int count) {
+		return feedForwardSparse(indices, signs, count, InferenceContext.current());
+	}
+
+	/**
+	 * Calculate the output values for a sparse input by forward propagation.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values. The returned array is reused by the next call
+	 *         with the same context.
+	 */
+	public double[] feedForwardSparse(int[] indices, int[] signs, int count, InferenceContext context) {
+		double[][] values = context.fit(layerSizes);
+
+		double[] first = values[1];
+		firstLayerSparse(indices, signs, count, first);
+		Kernel.INSTANCE.rootSigmoid(first, 0, layerSizes[1]);
+		propagate(values, 1);
+
+		return values[layerSizes.length - 1];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.FirstLayer#firstLayerSparse(int[], int[], int,
+	 * double[])
+	 */
+	@Override
+	public void firstLayerSparse(int[] indices, int[] signs, int count, double[] firstLayerSums) {
+		int size = layerSizes[1];
+		Arrays.fill(firstLayerSums, 0, size, 0);
+		for (int i = 0; i < count; i++)
+			Kernel.INSTANCE.addScaled(firstLayerSums, inputColumns, indices[i] * size, size, signs[i] > 0 ? 1 : -1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.FirstLayer#addInputColumn(double[], int,
+	 * double)
+	 */
+	@Override
+	public void addInputColumn(double[] firstLayerSums, int input, double scale) {
+		int size = layerSizes[1];
+		Kernel.INSTANCE.addScaled(firstLayerSums, inputColumns, input * size, size, scale);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.FirstLayer#getFirstLayerSize()
+	 */
+	@Override
+	public int getFirstLayerSize() {
+		return layerSizes[1];
+	}
+
+	// Get the first layer weights, stored column-major as [input neuron][first
+	// layer neuron]
+	double[] getInputColumns() {
+		return inputColumns;
+	}
+
+	// Get the layer sizes, from the input layer to the output layer
+	int[] getLayerSizes() {
+		return layerSizes;
+	}
+
+	// Get the row-major weights of each connection layer
+	double[][] getWeights() {
+		return weights;
+	}
+
+	// Run the layers of a batch, starting from the given layer of activations
+	private void propagateBatch(double[][] values, int firstLayer, int count) {
+		for (int l = firstLayer; l < weights.length; l++) {
+			double[] w = weights[l];
+			double[] back = values[l];
+			double[] front = values[l + 1];
+			int backSize = layerSizes[l];
+			int frontSize = layerSizes[l + 1];
+			for (int j = 0, row = 0; j < frontSize; j++, row += backSize) {
+				for (int b = 0, sample = 0; b < count; b++, sample += backSize)
+					front[b * frontSize + j] = Kernel.INSTANCE.dot(w, row, back, sample, backSize);
+			}
+			Kernel.INSTANCE.rootSigmoid(front, 0, count * frontSize);
 		}
+	}
 
-		for (Neuron n : outputs)
-			n.feedForward();
+	// Run the layers, starting from the given layer of activations
+	private void propagate(double[][] values, int firstLayer) {
+		for (int l = firstLayer; l < weights.length; l++) {
+			double[] w = weights[l];
+			double[] back = values[l];
+			double[] front = values[l + 1];
+			int backSize = layerSizes[l];
+			int frontSize = layerSizes[l + 1];
+			for (int j = 0, row = 0; j < frontSize; j++, row += backSize)
+				front[j] = Kernel.INSTANCE.dot(w, row, back, 0, backSize);
+			Kernel.INSTANCE.rootSigmoid(front, 0, frontSize);
+		}
 	}
 
 	/**
 	 * Randomly increase or decrease the weights in this network by a given value.
+	 * Only the weight matrices which are actually changed are copied. Random
+	 * values are drawn from the generator of the current thread.
 	 *
 	 * @param mutateChance
 	 *            the chance that a given weight will be modified
@@ -151,30 +519,46 @@ public class NeuralNet {
 	 *            the step value, i.e how much to add or subtract from a weights
 	 */
 	public void mutateWeights(double mutateChance, double stepVal) {
-		for (Neuron[] ns : hiddenLayers) {
-			for (Neuron n : ns) {
-				Synapse[] connections = n.getBackConnections();
-				for (Synapse s : connections) {
-					if (Math.random() < mutateChance) {
-						int sign = (int) Math.signum(Math.random() - 0.5);
-						s.weight += stepVal * sign * Math.random();
-					}
-				}
-			}
-		}
-		for (Neuron n : outputs) {
-			Synapse[] connections = n.getBackConnections();
-			for (Synapse s : connections) {
-				if (Math.random() < mutateChance) {
-					int sign = (int) Math.signum(Math.random() - 0.5);
-					s.weight += stepVal * sign;
+		mutateWeights(mutateChance, stepVal, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Randomly increase or decrease the weights in this network by a given value.
+	 * Only the weight matrices which are actually changed are copied.
+	 *
+	 * @param mutateChance
+	 *            the chance that a given weight will be modified
+	 * @param stepVal
+	 *            the step value, i.e how much to add or subtract from a weights
+	 * @param random
+	 *            the random generator to draw from
+	 */
+	public void mutateWeights(double mutateChance, double stepVal, RandomGenerator random) {
+		for (int l = 0; l < weights.length; l++) {
+			boolean output = l == weights.length - 1;
+			double[] w = null;
+			for (int i = 0; i < weights[l].length; i++) {
+				if (random.nextDouble() < mutateChance) {
+					if (w == null)
+						w = writableWeights(l);
+					int sign = (int) Math.signum(random.nextDouble() - 0.5);
+					if (output)
+						w[i] += stepVal * sign;
+					else
+						w[i] += stepVal * sign * random.nextDouble();
 				}
 			}
+			if (w != null && l == 0)
+				buildInputColumns();
 		}
+		inputs = null;
+		hiddenLayers = null;
+		outputs = null;
 	}
 
 	/**
-	 * Randomly adds or removes neurons from the hidden layers.
+	 * Randomly adds or removes neurons from the hidden layers. Random values are
+	 * drawn from the generator of the current thread.
 	 *
 	 * @param mutateChance
 	 *            the chance to select a neuron to be added or removed
@@ -182,46 +566,50 @@ public class NeuralNet {
 	 *            the chance for a selected neuron to be removed rather than added
 	 */
 	public void mutateNeurons(double mutateChance, double removeChance) {
-		for (int i = 0; i < hiddenLayers.length; i++) {
-			if (Math.random() < mutateChance) {
-				if (hiddenLayers[i].length > 1 && Math.random() < 0.5) // Remove a neuron
-				{
-					int index = (int) (Math.random() * hiddenLayers[i].length);
-					hiddenLayers[i][index].clearConnections();
-
-					Neuron[] newLayer = new Neuron[hiddenLayers[i].length - 1];
-					for (int j = 0; j < index; j++)
-						newLayer[j] = hiddenLayers[i][j];
-					for (int j = index; j < newLayer.length; j++)
-						newLayer[j] = hiddenLayers[i][j + 1];
-					hiddenLayers[i] = newLayer;
-
-				} else { // Add a neuron
-					hiddenLayers[i] = Arrays.copyOf(hiddenLayers[i], hiddenLayers[i].length + 1);
-					hiddenLayers[i][hiddenLayers[i].length - 1] = new Neuron();
-					// Add Backwards Connections
-					if (i > 0) {
-						for (Neuron n : hiddenLayers[i - 1])
-							new Synapse(hiddenLayers[i][hiddenLayers[i].length - 1], n, 2 * Math.random() - 1);
-					} else {
-						for (Neuron n : inputs)
-							new Synapse(hiddenLayers[i][hiddenLayers[i].length - 1], n, 2 * Math.random() - 1);
-					}
-					// Add Forwards Connections
-					if (i < hiddenLayers.length - 1) {
-						for (Neuron n : hiddenLayers[i + 1])
-							new Synapse(n, hiddenLayers[i][hiddenLayers[i].length - 1], 2 * Math.random() - 1);
-					} else {
-						for (Neuron n : outputs)
-							new Synapse(n, hiddenLayers[i][hiddenLayers[i].length - 1], 2 * Math.random() - 1);
-					}
+		mutateNeurons(mutateChance, removeChance, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Randomly adds or removes neurons from the hidden layers.
+	 *
+	 * @param mutateChance
+	 *            the chance to select a neuron to be added or removed
+	 * @param removeChance
+	 *            the chance for a selected neuron to be removed rather than added
+	 * @param random
+	 *            the random generator to draw from
+	 */
+	public void mutateNeurons(double mutateChance, double removeChance, RandomGenerator random) {
+		// The layer sizes may be shared with a copy
+		layerSizes = layerSizes.clone();
+		for (int layer = 1; layer < layerSizes.length - 1; layer++) {
+			if (random.nextDouble() < mutateChance) {
+				int size = layerSizes[layer];
+				int backSize = layerSizes[layer - 1], frontSize = layerSizes[layer + 1];
+				if (size > 1 && random.nextDouble() < 0.5) { // Remove a neuron
+					int index = (int) (random.nextDouble() * size);
+					weights[layer - 1] = deleteRow(weights[layer - 1], backSize, index);
+					weights[layer] = deleteColumn(weights[layer], frontSize, size, index);
+					layerSizes[layer]--;
+				} else { // Add a neuron, connected backwards then forwards
+					weights[layer - 1] = insertRow(weights[layer - 1], size, backSize, size, random);
+					weights[layer] = insertColumn(weights[layer], frontSize, size, size, random);
+					layerSizes[layer]++;
 				}
+				shared[layer - 1] = false;
+				shared[layer] = false;
+				if (layer == 1)
+					buildInputColumns();
 			}
 		}
+		inputs = null;
+		hiddenLayers = null;
+		outputs = null;
 	}
 
 	/**
-	 * Randomly adds or removes a hidden layer from the network.
+	 * Randomly adds or removes a hidden layer from the network. Random values are
+	 * drawn from the generator of the current thread.
 	 *
 	 * @param maxInsertSize
 	 *            the maximum neurons to put in a new layer
@@ -231,76 +619,135 @@ public class NeuralNet {
 	 *            the chance to remove a layer
 	 */
 	public void mutateLayer(int maxInsertSize, int maxRemoveSize, double removeChance) {
+		mutateLayer(maxInsertSize, maxRemoveSize, removeChance, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Randomly adds or removes a hidden layer from the network.
+	 *
+	 * @param maxInsertSize
+	 *            the maximum neurons to put in a new layer
+	 * @param maxRemoveSize
+	 *            the maximum neurons tin a layer that will be removed
+	 * @param removeChance
+	 *            the chance to remove a layer
+	 * @param random
+	 *            the random generator to draw from
+	 */
+	public void mutateLayer(int maxInsertSize, int maxRemoveSize, double removeChance, RandomGenerator random) {
 		// Generate Dimension and Index
-		int index = (int) (Math.random() * hiddenLayers.length);
-		int size = (int) (Math.random() * maxInsertSize + 1);
-
-		if (hiddenLayers.length > 1 && hiddenLayers[index].length <= maxRemoveSize && Math.random() < removeChance) {
-			for (Neuron n : hiddenLayers[index])
-				n.clearConnections();
-			Neuron[][] newLayers = new Neuron[hiddenLayers.length - 1][];
-			for (int i = 0; i < index; i++)
-				newLayers[i] = hiddenLayers[i];
-			for (int i = index + 1; i < hiddenLayers.length; i++)
-				newLayers[i - 1] = hiddenLayers[i];
-
-			if (index == 0) {
-				for (Neuron n1 : inputs) {
-					for (Neuron n2 : newLayers[0])
-						new Synapse(n2, n1, Math.random() * 2 - 1);
-				}
-			} else if (index == hiddenLayers.length - 1) {
-				for (Neuron n1 : newLayers[newLayers.length - 1]) {
-					for (Neuron n2 : outputs)
-						new Synapse(n2, n1, Math.random() * 2 - 1);
-				}
-			} else {
-				for (Neuron n1 : newLayers[index - 1]) {
-					for (Neuron n2 : newLayers[index])
-						new Synapse(n2, n1, Math.random() * 2 - 1);
+		int hiddenNum = layerSizes.length - 2;
+		int index = (int) (random.nextDouble() * hiddenNum);
+		int size = (int) (random.nextDouble() * maxInsertSize + 1);
+
+		int[] sizes;
+		double[][] w;
+		boolean[] s;
+		if (hiddenNum > 1 && layerSizes[index + 1] <= maxRemoveSize && random.nextDouble() < removeChance) {
+			// Replace the weights into and out of the layer with a single new matrix
+			int layer = index + 1;
+			int backSize = layerSizes[layer - 1], frontSize = layerSizes[layer + 1];
+			double[] bridge = new double[frontSize * backSize];
+			for (int k = 0; k < backSize; k++) {
+				for (int j = 0; j < frontSize; j++)
+					bridge[j * backSize + k] = random.nextDouble() * 2 - 1;
+			}
+
+			sizes = new int[layerSizes.length - 1];
+			w = new double[weights.length - 1][];
+			s = new boolean[weights.length - 1];
+			for (int i = 0; i < sizes.length; i++)
+				sizes[i] = layerSizes[i < layer ? i : i + 1];
+			for (int i = 0; i < w.length; i++) {
+				if (i < layer - 1) {
+					w[i] = weights[i];
+					s[i] = shared[i];
+				} else if (i > layer - 1) {
+					w[i] = weights[i + 1];
+					s[i] = shared[i + 1];
 				}
 			}
-			hiddenLayers = newLayers;
+			w[layer - 1] = bridge;
 		} else {
-			index = (int) (Math.random() * (hiddenLayers.length + 1));
-
-			// Create and fill new Hidden Layer Array
-			Neuron[][] newLayers = new Neuron[hiddenLayers.length + 1][];
-			for (int i = 0; i < index; i++)
-				newLayers[i] = hiddenLayers[i];
-			for (int i = index + 1; i < newLayers.length; i++)
-				newLayers[i] = hiddenLayers[i - 1];
-			// Disconnect old layers
-			if (index < newLayers.length - 1) {
-				for (Neuron n : newLayers[index + 1])
-					n.clearBackConnections();
-			} else {
-				for (Neuron n : outputs)
-					n.clearBackConnections();
+			// Split the weights between two layers with a new layer, connecting each
+			// new neuron backwards then forwards
+			int layer = (int) (random.nextDouble() * (hiddenNum + 1)) + 1;
+			int backSize = layerSizes[layer - 1], frontSize = layerSizes[layer];
+			double[] in = new double[size * backSize];
+			double[] out = new double[frontSize * size];
+			for (int i = 0; i < size; i++) {
+				for (int k = 0; k < backSize; k++)
+					in[i * backSize + k] = random.nextDouble() * 2 - 1;
+				for (int j = 0; j < frontSize; j++)
+					out[j * size + i] = random.nextDouble() * 2 - 1;
 			}
 
-			// Connect old layers with inserted layer
-			newLayers[index] = new Neuron[size];
-			for (int i = 0; i < newLayers[index].length; i++) {
-				newLayers[index][i] = new Neuron();
-				if (index > 0) {
-					for (Neuron n : newLayers[index - 1])
-						new Synapse(newLayers[index][i], n, Math.random() * 2 - 1);
-				} else {
-					for (Neuron n : inputs)
-						new Synapse(newLayers[index][i], n, Math.random() * 2 - 1);
-				}
-				if (index < newLayers.length - 1) {
-					for (Neuron n : newLayers[index + 1])
-						new Synapse(n, newLayers[index][i], Math.random() * 2 - 1);
-				} else {
-					for (Neuron n : outputs)
-						new Synapse(n, newLayers[index][i], Math.random() * 2 - 1);
+			sizes = new int[layerSizes.length + 1];
+			w = new double[weights.length + 1][];
+			s = new boolean[weights.length + 1];
+			for (int i = 0; i < sizes.length; i++)
+				sizes[i] = i < layer ? layerSizes[i] : i == layer ? size : layerSizes[i - 1];
+			for (int i = 0; i < weights.length; i++) {
+				if (i < layer - 1) {
+					w[i] = weights[i];
+					s[i] = shared[i];
+				} else if (i > layer - 1) {
+					w[i + 1] = weights[i];
+					s[i + 1] = shared[i];
 				}
 			}
-			// Replace hidden layers
-			hiddenLayers = newLayers;
+			w[layer - 1] = in;
+			w[layer] = out;
+		}
+
+		boolean firstChanged = w[0] != weights[0];
+		layerSizes = sizes;
+		weights = w;
+		shared = s;
+		if (firstChanged)
+			buildInputColumns();
+		inputs = null;
+		hiddenLayers = null;
+		outputs = null;
+	}
+
+	// Copy a row-major matrix without one of its rows
+	private static double[] deleteRow(double[] w, int columns, int row) {
+		double[] result = new double[w.length - columns];
+		System.arraycopy(w, 0, result, 0, row * columns);
+		System.arraycopy(w, (row + 1) * columns, result, row * columns, result.length - row * columns);
+		return result;
+	}
+
+	// Copy a row-major matrix without one of its columns
+	private static double[] deleteColumn(double[] w, int rows, int columns, int column) {
+		double[] result = new double[rows * (columns - 1)];
+		for (int j = 0; j < rows; j++) {
+			System.arraycopy(w, j * columns, result, j * (columns - 1), column);
+			System.arraycopy(w, j * columns + column + 1, result, j * (columns - 1) + column, columns - column - 1);
 		}
+		return result;
+	}
+
+	// Copy a row-major matrix with a new row of random weights
+	private static double[] insertRow(double[] w, int rows, int columns, int row, RandomGenerator random) {
+		double[] result = new double[w.length + columns];
+		System.arraycopy(w, 0, result, 0, row * columns);
+		for (int k = 0; k < columns; k++)
+			result[row * columns + k] = 2 * random.nextDouble() - 1;
+		System.arraycopy(w, row * columns, result, (row + 1) * columns, (rows - row) * columns);
+		return result;
+	}
+
+	// Copy a row-major matrix with a new column of random weights
+	private static double[] insertColumn(double[] w, int rows, int columns, int column, RandomGenerator random) {
+		double[] result = new double[rows * (columns + 1)];
+		for (int j = 0; j < rows; j++) {
+			System.arraycopy(w, j * columns, result, j * (columns + 1), column);
+			result[j * (columns + 1) + column] = 2 * random.nextDouble() - 1;
+			System.arraycopy(w, j * columns + column, result, j * (columns + 1) + column + 1, columns - column);
+		}
+		return result;
 	}
 
 	/**
@@ -310,97 +757,169 @@ public class NeuralNet {
 	 *            the output stream
 	 */
 	public void printNet(PrintStream out) {
-		for (int i = 0; i < hiddenLayers.length; i++) { // Print hidden layer size and weights
-			if (i > 0)
+		for (int l = 0; l < weights.length; l++) { // Print layer weights
+			if (l > 0)
 				out.print(';');
-			for (int j = 0; j < hiddenLayers[i].length; j++) {
+			double[] w = weights[l];
+			int backSize = layerSizes[l];
+			for (int j = 0; j < layerSizes[l + 1]; j++) {
 				if (j > 0)
 					out.print(':');
-				Synapse[] connections = hiddenLayers[i][j].getBackConnections();
-				for (int k = 0; k < connections.length; k++) {
+				for (int k = 0; k < backSize; k++) {
 					if (k > 0)
 						out.print(',');
-					out.print(connections[k].weight);
+					out.print(w[j * backSize + k]);
 				}
 			}
 		}
+	}
 
-		out.print(';');
+	/** The first four bytes of a binary net file, "DCNN". */
+	public static final int BINARY_MAGIC = 0x4E4E4344;
 
-		for (int i = 0; i < outputs.length; i++) {
-			if (i > 0)
-				out.print(':');
-			Synapse[] connections = outputs[i].getBackConnections();
-			for (int j = 0; j < connections.length; j++) {
-				if (j > 0)
-					out.print(',');
-				out.print(connections[j].weight);
-			}
-		}
-	}
+	/** The version of the binary net format written by this class. */
+	public static final int BINARY_VERSION = 1;
 
 	/**
-	 * Instantiates a new neural net based on input stream data.
+	 * Write this neural net to an output stream in the binary format. The format
+	 * is little-endian: the magic number, the format version, the size in bytes
+	 * of each weight (4 or 8), the number of layers, the size of each layer from
+	 * the input layer to the output layer, then the row-major weights of each
+	 * connection layer.
 	 *
-	 * @param in
-	 *            the input stream to read from
+	 * @param out
+	 *            the output stream
+	 * @param singlePrecision
+	 *            true to store the weights as floats rather than doubles
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
 	 */
-	public NeuralNet(InputStream in) {
-		String[][] neurons;
+	public void writeBinary(OutputStream out, boolean singlePrecision) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(binarySize(singlePrecision));
+		writeBinary(buffer, singlePrecision);
+		out.write(buffer.array());
+		out.flush();
+	}
 
-		{ // Read weight list array from input stream
-			Scanner s = new Scanner(in);
-			String input = s.nextLine();
-			s.close();
+	// Get the number of bytes needed to write this net in the binary format
+	int binarySize(boolean singlePrecision) {
+		int size = 16 + 4 * layerSizes.length;
+		for (double[] layer : weights)
+			size += layer.length * (singlePrecision ? 4 : 8);
+		return size;
+	}
 
-			String[] layers = input.split(";");
-			neurons = new String[layers.length][];
-			for (int i = 0; i < neurons.length; i++)
-				neurons[i] = layers[i].split(":");
+	// Write this net in the binary format to a buffer at its current position
+	void writeBinary(ByteBuffer buffer, boolean singlePrecision) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(singlePrecision ? 4 : 8).putInt(layerSizes.length);
+		for (int size : layerSizes)
+			buffer.putInt(size);
+
+		for (double[] layer : weights) {
+			if (singlePrecision) {
+				for (double weight : layer)
+					buffer.putFloat((float) weight);
+			} else {
+				buffer.asDoubleBuffer().put(layer);
+				buffer.position(buffer.position() + layer.length * 8);
+			}
 		}
+	}
 
-		// Create the Neural Network with empty neurons
-		inputs = new Neuron[neurons[0][0].split(",").length];
-		for (
-
-				int i = 0; i < inputs.length; i++)
-			inputs[i] = new Neuron();
-		hiddenLayers = new Neuron[neurons.length - 1][];
-		for (int i = 0; i < hiddenLayers.length; i++) {
-			hiddenLayers[i] = new Neuron[neurons[i].length];
-			for (int j = 0; j < hiddenLayers[i].length; j++)
-				hiddenLayers[i][j] = new Neuron();
+	/**
+	 * Load a neural net from a file, which may be in either the binary format or
+	 * the text format. Binary files are memory mapped and read directly into the
+	 * weight matrices.
+	 *
+	 * @param file
+	 *            the file to read from
+	 * @return the neural net
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static NeuralNet load(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() >= 4 && buffer.getInt(0) == BINARY_MAGIC)
+				return readBinary(buffer);
+		} finally {
+			channel.close();
 		}
-		outputs = new Neuron[neurons[neurons.length - 1].length];
-		for (int i = 0; i < outputs.length; i++)
-			outputs[i] = new Neuron();
 
-		// Fill the weights of the first connection layer
-		for (int i = 0; i < hiddenLayers[0].length; i++) {
-			String[] connections = neurons[0][i].split(",");
-			for (int j = 0; j < inputs.length; j++)
-				new Synapse(hiddenLayers[0][i], inputs[j], Double.parseDouble(connections[j]));
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return new NeuralNet(in);
+		} finally {
+			in.close();
 		}
+	}
 
-		// Fill the hidden layer connection weights
-		for (int i = 1; i < hiddenLayers.length; i++) {
-			for (int j = 0; j < hiddenLayers[i].length; j++) {
-				String[] connections = neurons[i][j].split(",");
-				for (int k = 0; k < hiddenLayers[i - 1].length; k++)
-					new Synapse(hiddenLayers[i][j], hiddenLayers[i - 1][k], Double.parseDouble(connections[k]));
+	/**
+	 * Read a neural net in the binary format from a buffer.
+	 *
+	 * @param buffer
+	 *            the buffer to read from, positioned at the magic number
+	 * @return the neural net
+	 * @throws IOException
+	 *             if the buffer does not hold a supported binary net
+	 */
+	public static NeuralNet readBinary(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if (buffer.getInt() != BINARY_MAGIC)
+				throw new IOException("Not a binary net file");
+			int version = buffer.getInt();
+			if (version != BINARY_VERSION)
+				throw new IOException("Unsupported binary net version " + version);
+			int weightBytes = buffer.getInt();
+			if (weightBytes != 4 && weightBytes != 8)
+				throw new IOException("Unsupported weight size " + weightBytes);
+
+			int[] sizes = new int[buffer.getInt()];
+			for (int i = 0; i < sizes.length; i++)
+				sizes[i] = buffer.getInt();
+
+			double[][] w = new double[sizes.length - 1][];
+			for (int l = 0; l < w.length; l++) {
+				w[l] = new double[sizes[l] * sizes[l + 1]];
+				if (weightBytes == 8) {
+					buffer.asDoubleBuffer().get(w[l]);
+					buffer.position(buffer.position() + w[l].length * 8);
+				} else {
+					FloatBuffer floats = buffer.asFloatBuffer();
+					for (int i = 0; i < w[l].length; i++)
+						w[l][i] = floats.get(i);
+					buffer.position(buffer.position() + w[l].length * 4);
+				}
 			}
+
+			return new NeuralNet(sizes, w);
+		} catch (BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException e) {
+			throw new IOException("Corrupt binary net file", e);
 		}
+	}
 
-		// Fill the output layer connection weights
-		for (int i = 0; i < outputs.length; i++) {
-			String[] connections = neurons[neurons.length - 1][i].split(",");
-			for (int j = 0; j < hiddenLayers[hiddenLayers.length - 1].length; j++)
-				new Neuron.Synapse(outputs[i], hiddenLayers[hiddenLayers.length - 1][j], Double.parseDouble(connections[j]));
+	/**
+	 * Instantiates a new neural net based on input stream data.
+	 *
+	 * @param in
+	 *            the input stream to read from
+	 */
+	public NeuralNet(InputStream in) {
+		NetTextReader reader = new NetTextReader(in);
+		try {
+			reader.read();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
+		build(reader.getLayerSizes(), reader.getWeights());
 	}
 
 	// Debug Method
 	public void draw(PApplet canvas, float x, float y, float height, float width, float neuronDiam) {
+		ensureGraph();
 		int textColor = 0, neuronColor = 255, synapseColor = 150, weightColor = Color.RED.getRGB();
 		int neuronLineColor = 0;
 		int weightDist = 4;
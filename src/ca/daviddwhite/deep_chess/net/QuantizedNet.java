@@ -0,0 +1,354 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.util.Arrays;
+
+/**
+ * A frozen, quantized copy of a NeuralNet, with integer weights. The first layer
+ * weights and sums are stored as 16 bit integers and the weights of every later
+ * layer as 8 bit integers, with activations quantized to 8 bits in between, so
+ * the sums are calculated with integer arithmetic. The first layer activations
+ * are looked up in a table indexed by the integer sum.
+ * <p>
+ * The weights of each later layer are scaled by the largest weight in that
+ * layer. The first layer weights and the activations of each hidden layer are
+ * scaled to cover the values the layer reaches, which are measured on sample
+ * inputs with a {@link Calibration}. Without one, the full range of the
+ * activation function is covered. Like NeuralNet, the working values are kept
+ * in an {@link InferenceContext}.
+ * <p>
+ * The weights take a fraction of the memory of the full precision weights, but
+ * without integer SIMD kernels the quantized net is not faster than the
+ * NeuralNet, so it is not a speed mode. NetBenchmark compares the two.
+ */
+public class QuantizedNet {
+	/** The largest quantized activation. */
+	public static final int ACTIVATION_SCALE = 127;
+
+	/**
+	 * The quantized first layer sum the largest calibrated sum is scaled to. The
+	 * activation table holds every 16 bit sum, so larger sums are still looked up
+	 * without clamping.
+	 */
+	public static final int TABLE_RANGE = 1 << 14;
+
+	/**
+	 * The first layer sum scaled to {@link #TABLE_RANGE} when the net is not
+	 * calibrated. Every larger sum quantizes to the largest activation.
+	 */
+	public static final double SATURATED_SUM = 12;
+
+	/**
+	 * The most inputs a sparse input may have active at once. The first layer
+	 * weights are scaled so the sums of this many inputs fit in 16 bits.
+	 */
+	public static final int MAX_ACTIVE_INPUTS = 32;
+
+	/**
+	 * The Class Calibration measures the values each hidden layer of a neural net
+	 * reaches on sample inputs, so a quantized copy can spend its precision on
+	 * them. A calibration must only be used by one thread at a time.
+	 */
+	public static class Calibration {
+		// The net being calibrated
+		private final NeuralNet net;
+
+		// The largest absolute first layer sum before activation
+		private double inputRange;
+		// The largest absolute activation of each hidden layer
+		private final double[] activationRanges;
+
+		// Working values for running the samples
+		private final double[] sums;
+		private final InferenceContext context = new InferenceContext();
+
+		/**
+		 * Instantiates a new calibration for a neural net.
+		 *
+		 * @param net
+		 *            the neural net to calibrate
+		 */
+		public Calibration(NeuralNet net) {
+			this.net = net;
+			int[] sizes = net.getLayerSizes();
+			activationRanges = new double[sizes.length - 2];
+			sums = new double[sizes[1]];
+		}
+
+		/**
+		 * Run a sparse sample input through the net and record the values each
+		 * hidden layer reaches.
+		 *
+		 * @param indices
+		 *            the indices of the active input neurons
+		 * @param signs
+		 *            the sign of each active input neuron, positive for 1 and
+		 *            negative for -1
+		 * @param count
+		 *            the number of active input neurons
+		 */
+		public void addSample(int[] indices, int[] signs, int count) {
+			net.firstLayerSparse(indices, signs, count, sums);
+			for (double sum : sums)
+				inputRange = Math.max(inputRange, Math.abs(sum));
+
+			net.feedForwardFromFirstLayer(sums, 1, context);
+			int[] sizes = net.getLayerSizes();
+			for (int l = 0; l < activationRanges.length; l++) {
+				double[] values = context.batch[l + 1];
+				for (int j = 0; j < sizes[l + 1]; j++)
+					activationRanges[l] = Math.max(activationRanges[l], Math.abs(values[j]));
+			}
+		}
+	}
+
+	// The layer sizes, from the input layer to the output layer
+	private int[] layerSizes;
+
+	// The first layer weights, stored column-major as [input neuron][first layer
+	// neuron]. The sum of any MAX_ACTIVE_INPUTS of them fits in 16 bits.
+	private short[] inputColumns;
+	// The scale the first layer weights were multiplied by
+	private double inputScale;
+	// The quantized first layer activation for every 16 bit sum, indexed by the
+	// sum's bits read as an unsigned value
+	private byte[] firstActivations;
+
+	// The weights of each later connection layer, stored row-major as [front
+	// neuron][back neuron]
+	private byte[][] weights;
+	// The scale the weights of each later connection layer were multiplied by
+	private double[] weightScales;
+	// The scale the activations of each hidden layer were multiplied by
+	private double[] activationScales;
+
+	/**
+	 * Instantiates a new quantized net from the current weights of a neural net,
+	 * covering the full range of the activation function. Later changes to the
+	 * neural net are not reflected in the quantized net.
+	 *
+	 * @param net
+	 *            the neural net to quantize
+	 */
+	public QuantizedNet(NeuralNet net) {
+		this(net, null);
+	}
+
+	/**
+	 * Instantiates a new quantized net from the current weights of a neural net,
+	 * with the first layer weights and the activations scaled to cover the values
+	 * seen in calibration. Values beyond them are clamped. Later changes to the
+	 * neural net are not reflected in the quantized net.
+	 *
+	 * @param net
+	 *            the neural net to quantize
+	 * @param calibration
+	 *            the values the net reached on sample inputs, or null to cover
+	 *            the full range of the activation function
+	 */
+	public QuantizedNet(NeuralNet net, Calibration calibration) {
+		int[] sizes = net.getLayerSizes();
+		double[][] w = net.getWeights();
+		layerSizes = sizes.clone();
+
+		// Scale each hidden layer's activations to the largest value it reaches
+		activationScales = new double[sizes.length - 2];
+		for (int l = 0; l < activationScales.length; l++) {
+			double range = calibration != null ? calibration.activationRanges[l] : 0;
+			activationScales[l] = ACTIVATION_SCALE / (range > 0 ? range : 1);
+		}
+
+		// Quantize the first layer to 16 bits, with the sums it reaches scaled to
+		// the table range and every possible sum fitting in 16 bits
+		double inputRange = calibration != null && calibration.inputRange > 0 ? Math.min(calibration.inputRange, SATURATED_SUM) : SATURATED_SUM;
+		inputScale = Math.min((Short.MAX_VALUE - MAX_ACTIVE_INPUTS) / maxActiveSum(w[0], sizes[0], sizes[1]), TABLE_RANGE / inputRange);
+		inputColumns = new short[w[0].length];
+		for (int j = 0; j < sizes[1]; j++) {
+			for (int k = 0; k < sizes[0]; k++)
+				inputColumns[k * sizes[1] + j] = (short) Math.round(w[0][j * sizes[0] + k] * inputScale);
+		}
+
+		// Quantize the later layers to 8 bits
+		weights = new byte[w.length - 1][];
+		weightScales = new double[w.length - 1];
+		for (int l = 1; l < w.length; l++) {
+			weightScales[l - 1] = Byte.MAX_VALUE / maxAbs(w[l]);
+			weights[l - 1] = new byte[w[l].length];
+			for (int i = 0; i < w[l].length; i++)
+				weights[l - 1][i] = (byte) Math.round(w[l][i] * weightScales[l - 1]);
+		}
+
+		firstActivations = new byte[1 << 16];
+		for (int i = Short.MIN_VALUE; i <= Short.MAX_VALUE; i++)
+			firstActivations[i & 0xFFFF] = quantizeActivation(i / inputScale, activationScales[0]);
+	}
+
+	// Get the largest absolute first layer sum any MAX_ACTIVE_INPUTS inputs of 1
+	// or -1 can give, or 1 if all weights are zero
+	private static double maxActiveSum(double[] w, int inputs, int size) {
+		double max = 0;
+		double[] row = new double[inputs];
+		for (int j = 0; j < size; j++) {
+			for (int k = 0; k < inputs; k++)
+				row[k] = Math.abs(w[j * inputs + k]);
+			Arrays.sort(row);
+			double sum = 0;
+			for (int k = Math.max(0, inputs - MAX_ACTIVE_INPUTS); k < inputs; k++)
+				sum += row[k];
+			max = Math.max(max, sum);
+		}
+		return max == 0 ? 1 : max;
+	}
+
+	// Get the largest absolute value in an array, or 1 if all values are zero
+	private static double maxAbs(double[] values) {
+		double max = 0;
+		for (double v : values)
+			max = Math.max(max, Math.abs(v));
+		return max == 0 ? 1 : max;
+	}
+
+	/**
+	 * Get the number of neurons in the first hidden layer.
+	 *
+	 * @return the size of the first hidden layer
+	 */
+	public int getFirstLayerSize() {
+		return layerSizes[1];
+	}
+
+	/**
+	 * Calculate the quantized first hidden layer sums before activation for a
+	 * sparse input. Only the listed inputs are non-zero, with a value of 1 or -1,
+	 * and at most {@link #MAX_ACTIVE_INPUTS} of them.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @param firstLayerSums
+	 *            the array to write the first hidden layer sums to
+	 */
+	public void firstLayerSparse(int[] indices, int[] signs, int count, short[] firstLayerSums) {
+		int size = layerSizes[1];
+		for (int j = 0; j < size; j++)
+			firstLayerSums[j] = 0;
+		for (int i = 0; i < count; i++)
+			addInputColumn(firstLayerSums, indices[i], signs[i]);
+	}
+
+	/**
+	 * Add or subtract the quantized first layer weights of a single input neuron
+	 * to a set of quantized first hidden layer sums. The sums wrap around rather
+	 * than overflow, so removing an input always undoes adding it, and the sums
+	 * are exact whenever at most {@link #MAX_ACTIVE_INPUTS} inputs are active.
+	 *
+	 * @param firstLayerSums
+	 *            the quantized first hidden layer sums to update
+	 * @param input
+	 *            the index of the input neuron
+	 * @param sign
+	 *            positive to add the input, negative to remove it
+	 */
+	public void addInputColumn(short[] firstLayerSums, int input, int sign) {
+		int size = layerSizes[1];
+		int column = input * size;
+		if (sign > 0) {
+			for (int j = 0; j < size; j++)
+				firstLayerSums[j] = (short) (firstLayerSums[j] + inputColumns[column + j]);
+		} else {
+			for (int j = 0; j < size; j++)
+				firstLayerSums[j] = (short) (firstLayerSums[j] - inputColumns[column + j]);
+		}
+	}
+
+	/**
+	 * Calculate the output values for a sparse input by forward propagation. Only
+	 * the listed inputs are non-zero, with a value of 1 or -1.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @return the output values. The returned array is reused by the next call on
+	 *         the same thread.
+	 */
+	public double[] feedForwardSparse(int[] indices, int[] signs, int count) {
+		return feedForwardSparse(indices, signs, count, InferenceContext.current());
+	}
+
+	/**
+	 * Calculate the output values for a sparse input by forward propagation.
+	 *
+	 * @param indices
+	 *            the indices of the active input neurons
+	 * @param signs
+	 *            the sign of each active input neuron, positive for 1 and negative
+	 *            for -1
+	 * @param count
+	 *            the number of active input neurons
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values. The returned array is reused by the next call
+	 *         with the same context.
+	 */
+	public double[] feedForwardSparse(int[] indices, int[] signs, int count, InferenceContext context) {
+		context.fitQuantized(layerSizes);
+		firstLayerSparse(indices, signs, count, context.quantizedSums);
+		return feedForwardFromFirstLayer(context.quantizedSums, context);
+	}
+
+	/**
+	 * Calculate the output values from quantized first hidden layer sums, such as
+	 * those kept up to date with {@link #addInputColumn(short[], int, int)}.
+	 *
+	 * @param firstLayerSums
+	 *            the quantized first hidden layer sums before activation
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values. The returned array is reused by the next call
+	 *         with the same context.
+	 */
+	public double[] feedForwardFromFirstLayer(short[] firstLayerSums, InferenceContext context) {
+		context.fitQuantized(layerSizes);
+		byte[][] hidden = context.quantizedHidden;
+		double[] outputs = context.quantizedOutputs;
+		int size = layerSizes[1];
+
+		byte[] first = hidden[0];
+		for (int j = 0; j < size; j++)
+			first[j] = firstActivations[firstLayerSums[j] & 0xFFFF];
+
+		for (int l = 0; l < weights.length; l++) {
+			byte[] w = weights[l];
+			byte[] back = hidden[l];
+			int backSize = layerSizes[l + 1];
+			int frontSize = layerSizes[l + 2];
+			double scale = weightScales[l] * activationScales[l];
+			boolean output = l == weights.length - 1;
+			for (int j = 0, row = 0; j < frontSize; j++, row += backSize) {
+				int sum = 0;
+				for (int k = 0; k < backSize; k++)
+					sum += w[row + k] * back[k];
+				if (output)
+					outputs[j] = Sigmoid.rootSigmoid(sum / scale, 1);
+				else
+					hidden[l + 1][j] = quantizeActivation(sum / scale, activationScales[l + 1]);
+			}
+		}
+
+		return outputs;
+	}
+
+	// Apply the activation function and quantize the result to 8 bits with the
+	// given scale, clamping values beyond the calibrated range
+	private static byte quantizeActivation(double sum, double scale) {
+		long value = Math.round(Sigmoid.rootSigmoid(sum, 1) * scale);
+		return (byte) Math.max(-ACTIVATION_SCALE, Math.min(ACTIVATION_SCALE, value));
+	}
+}
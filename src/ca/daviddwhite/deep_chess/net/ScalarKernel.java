@@ -0,0 +1,55 @@
+package ca.daviddwhite.deep_chess.net;
+
+/**
+ * The plain Java implementation of the forward propagation kernels.
+ */
+class ScalarKernel extends Kernel {
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#dot(double[], int, double[], int,
+	 * int)
+	 */
+	@Override
+	double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+		int bound = length - length % LANES;
+		int i = 0;
+		for (; i < bound; i += LANES) {
+			int ai = aOffset + i, bi = bOffset + i;
+			s0 += a[ai] * b[bi];
+			s1 += a[ai + 1] * b[bi + 1];
+			s2 += a[ai + 2] * b[bi + 2];
+			s3 += a[ai + 3] * b[bi + 3];
+			s4 += a[ai + 4] * b[bi + 4];
+			s5 += a[ai + 5] * b[bi + 5];
+			s6 += a[ai + 6] * b[bi + 6];
+			s7 += a[ai + 7] * b[bi + 7];
+		}
+		double sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+		for (; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#addScaled(double[], double[], int,
+	 * int, double)
+	 */
+	@Override
+	void addScaled(double[] target, double[] source, int sourceOffset, int length, double scale) {
+		for (int i = 0; i < length; i++)
+			target[i] += scale * source[sourceOffset + i];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#rootSigmoid(double[], int, int)
+	 */
+	@Override
+	void rootSigmoid(double[] values, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			values[i] = Sigmoid.rootSigmoid(values[i], 1);
+	}
+}
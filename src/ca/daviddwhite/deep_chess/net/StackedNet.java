@@ -0,0 +1,183 @@
+package ca.daviddwhite.deep_chess.net;
+
+import java.util.Arrays;
+
+/**
+ * A population of nets with the same input size, with their first layers
+ * stacked into a single matrix. The first layer sums of every net are
+ * calculated together in one pass over the inputs, then the later layers are
+ * run separately for each net.
+ * <p>
+ * The stacked first layer sums are laid out net by net, so the sums of net k
+ * are the {@link #getFirstLayerSize(int)} values starting at
+ * {@link #getOffset(int)}. The stack is frozen when it is created, so later
+ * changes to the nets are not reflected in it.
+ */
+public class StackedNet implements FirstLayer {
+	// Frozen copies of the nets
+	private final NeuralNet[] nets;
+
+	// The offset of the first layer of each net within the stack, with the total
+	// size at the end
+	private final int[] offsets;
+
+	// The stacked first layer weights, stored column-major as [input
+	// neuron][stacked first layer neuron]
+	private final double[] inputColumns;
+
+	/**
+	 * Instantiates a new stack from the current weights of some nets.
+	 *
+	 * @param nets
+	 *            the nets to stack, which must all have the same number of inputs
+	 */
+	public StackedNet(NeuralNet... nets) {
+		if (nets.length == 0)
+			throw new IllegalArgumentException("At least one net is needed to make a stack");
+
+		this.nets = new NeuralNet[nets.length];
+		this.offsets = new int[nets.length + 1];
+		int inputSize = nets[0].getLayerSizes()[0];
+		for (int k = 0; k < nets.length; k++) {
+			if (nets[k].getLayerSizes()[0] != inputSize)
+				throw new IllegalArgumentException("Every net in a stack must have the same number of inputs");
+			this.nets[k] = new NeuralNet(nets[k]);
+			offsets[k + 1] = offsets[k] + nets[k].getFirstLayerSize();
+		}
+
+		// Interleave the columns of each net, so the weights of one input for the
+		// whole population are contiguous
+		int total = offsets[nets.length];
+		inputColumns = new double[inputSize * total];
+		for (int k = 0; k < nets.length; k++) {
+			double[] columns = this.nets[k].getInputColumns();
+			int size = this.nets[k].getFirstLayerSize();
+			for (int i = 0; i < inputSize; i++)
+				System.arraycopy(columns, i * size, inputColumns, i * total + offsets[k], size);
+		}
+	}
+
+	/**
+	 * Get the number of nets in the stack.
+	 *
+	 * @return the number of nets
+	 */
+	public int getNetCount() {
+		return nets.length;
+	}
+
+	/**
+	 * Get the frozen copy of a net in the stack.
+	 *
+	 * @param net
+	 *            the index of the net
+	 * @return the net
+	 */
+	public NeuralNet getNet(int net) {
+		return nets[net];
+	}
+
+	/**
+	 * Get the offset of the first layer sums of a net within the stacked sums.
+	 *
+	 * @param net
+	 *            the index of the net
+	 * @return the offset of its sums
+	 */
+	public int getOffset(int net) {
+		return offsets[net];
+	}
+
+	/**
+	 * Get the size of the first hidden layer of a net in the stack.
+	 *
+	 * @param net
+	 *            the index of the net
+	 * @return the size of its first hidden layer
+	 */
+	public int getFirstLayerSize(int net) {
+		return offsets[net + 1] - offsets[net];
+	}
+
+	/**
+	 * Get the total size of the stacked first layers.
+	 *
+	 * @return the size of the stacked first layer
+	 */
+	@Override
+	public int getFirstLayerSize() {
+		return offsets[nets.length];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.FirstLayer#firstLayerSparse(int[], int[], int,
+	 * double[])
+	 */
+	@Override
+	public void firstLayerSparse(int[] indices, int[] signs, int count, double[] firstLayerSums) {
+		int total = offsets[nets.length];
+		Arrays.fill(firstLayerSums, 0, total, 0);
+		for (int i = 0; i < count; i++)
+			Kernel.INSTANCE.addScaled(firstLayerSums, inputColumns, indices[i] * total, total, signs[i] > 0 ? 1 : -1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.FirstLayer#addInputColumn(double[], int,
+	 * double)
+	 */
+	@Override
+	public void addInputColumn(double[] firstLayerSums, int input, double scale) {
+		int total = offsets[nets.length];
+		Kernel.INSTANCE.addScaled(firstLayerSums, inputColumns, input * total, total, scale);
+	}
+
+	/**
+	 * Calculate the first layer sums of every net for a dense input, skipping the
+	 * inputs which are zero.
+	 *
+	 * @param inputValues
+	 *            the input values, one for each input neuron
+	 * @param firstLayerSums
+	 *            the array to write the stacked first layer sums to
+	 */
+	public void firstLayer(double[] inputValues, double[] firstLayerSums) {
+		int total = offsets[nets.length];
+		Arrays.fill(firstLayerSums, 0, total, 0);
+		for (int i = 0; i < inputValues.length; i++) {
+			if (inputValues[i] != 0)
+				Kernel.INSTANCE.addScaled(firstLayerSums, inputColumns, i * total, total, inputValues[i]);
+		}
+	}
+
+	/**
+	 * Calculate the output values of one net in the stack for a batch of samples
+	 * whose stacked first layer sums have already been computed.
+	 *
+	 * @param net
+	 *            the index of the net
+	 * @param stackedSums
+	 *            the stacked first layer sums before activation for every sample,
+	 *            stored row-major as [sample][stacked first layer neuron]
+	 * @param count
+	 *            the number of samples in the batch
+	 * @param context
+	 *            the context to keep the working values in
+	 * @return the output values of the net for every sample, stored row-major as
+	 *         [sample][output neuron]. The returned array is reused by the next
+	 *         call with the same context.
+	 */
+	public double[] feedForwardFromFirstLayer(int net, double[] stackedSums, int count, InferenceContext context) {
+		int total = offsets[nets.length];
+		int offset = offsets[net];
+		int size = offsets[net + 1] - offset;
+
+		// Gather the sums of the net into a batch of its own
+		double[] sums = context.fitGather(count * size);
+		for (int b = 0; b < count; b++)
+			System.arraycopy(stackedSums, b * total + offset, sums, b * size, size);
+
+		return nets[net].feedForwardFromFirstLayer(sums, count, context);
+	}
+}
@@ -0,0 +1,70 @@
+package ca.daviddwhite.deep_chess.net;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD implementation of the forward propagation kernels, using the
+ * jdk.incubator.vector module. Compiling and running it requires
+ * --add-modules jdk.incubator.vector; without the module the scalar kernel is
+ * used instead.
+ */
+class VectorKernel extends Kernel {
+	// Two 256 bit vectors make up the partial sums of a dot product
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#dot(double[], int, double[], int,
+	 * int)
+	 */
+	@Override
+	double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		int step = SPECIES.length();
+		DoubleVector low = DoubleVector.zero(SPECIES), high = DoubleVector.zero(SPECIES);
+		int bound = length - length % LANES;
+		int i = 0;
+		for (; i < bound; i += LANES) {
+			int ai = aOffset + i, bi = bOffset + i;
+			low = low.add(DoubleVector.fromArray(SPECIES, a, ai).mul(DoubleVector.fromArray(SPECIES, b, bi)));
+			high = high.add(DoubleVector.fromArray(SPECIES, a, ai + step).mul(DoubleVector.fromArray(SPECIES, b, bi + step)));
+		}
+		double sum = ((low.lane(0) + low.lane(1)) + (low.lane(2) + low.lane(3))) + ((high.lane(0) + high.lane(1)) + (high.lane(2) + high.lane(3)));
+		for (; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#addScaled(double[], double[], int,
+	 * int, double)
+	 */
+	@Override
+	void addScaled(double[] target, double[] source, int sourceOffset, int length, double scale) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector t = DoubleVector.fromArray(SPECIES, target, i);
+			t.add(DoubleVector.fromArray(SPECIES, source, sourceOffset + i).mul(scale)).intoArray(target, i);
+		}
+		for (; i < length; i++)
+			target[i] += scale * source[sourceOffset + i];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ca.daviddwhite.deep_chess.net.Kernel#rootSigmoid(double[], int, int)
+	 */
+	@Override
+	void rootSigmoid(double[] values, int offset, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = offset;
+		for (; i < offset + bound; i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, values, i);
+			x.div(x.mul(x).add(1).sqrt()).intoArray(values, i);
+		}
+		for (; i < offset + length; i++)
+			values[i] = Sigmoid.rootSigmoid(values[i], 1);
+	}
+}
@@ -1,5 +1,7 @@
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Scanner;
 
 import org.petero.cuckoo.engine.chess.ComputerPlayer;
@@ -8,15 +10,12 @@ import org.petero.cuckoo.engine.chess.Game.GameState;
 import org.petero.cuckoo.engine.chess.HumanPlayer;
 import org.petero.cuckoo.engine.chess.Move;
 import org.petero.cuckoo.engine.chess.MoveGen;
-import org.petero.cuckoo.engine.chess.Piece;
 import org.petero.cuckoo.engine.chess.Player;
 import org.petero.cuckoo.engine.chess.TextIO;
 
 import ca.daviddwhite.deep_chess.ChessNet;
 
 public class cuckooTest {
-	public static final Move EMPTY = new Move(0, 0, Piece.EMPTY);
-
 	public static ChessNet cp;
 	public static ChessNet cp2;
 	public static ComputerPlayer c1, c2;
@@ -25,8 +24,8 @@ public class cuckooTest {
 
 	public static void playLoadedNet(String fileHandle) {
 		try {
-			cp = new ChessNet(new FileInputStream("nets/" + fileHandle));
-		} catch (FileNotFoundException e) {
+			cp = new ChessNet(new File("nets/" + fileHandle));
+		} catch (IOException e) {
 			e.printStackTrace();
 			System.out.println("wrong file fukko");
 			System.exit(0);
@@ -51,12 +50,11 @@ public class cuckooTest {
 			moveCheck: while (true) {
 				String command = s.next();
 				Move move = TextIO.uciStringToMove(command);
-				for (int i = 0; i < moves.m.length; i++) {
-					if (moves.m[i].equals(move)) {
+				for (int i = 0; i < moves.size; i++) {
+					if ((move != null) && (moves.m[i] == move.encode())) {
 						game.processString(TextIO.moveToString(game.pos, move, false));
 						break moveCheck;
-					} else if (moves.m[i].equals(EMPTY))
-						break;
+					}
 				}
 				System.out.println("Invalid Move: " + move);
 			}
@@ -132,23 +132,26 @@ public class Book {
             return null;
         }
         
-        MoveGen.MoveList legalMoves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen moveGen = MoveGen.current();
+        MoveGen.MoveList legalMoves = moveGen.pseudoLegalMoves(pos);
         MoveGen.removeIllegal(pos, legalMoves);
         int sum = 0;
         for (int i = 0; i < bookMoves.size(); i++) {
             BookEntry be = bookMoves.get(i);
             boolean contains = false;
             for (int mi = 0; mi < legalMoves.size; mi++)
-                if (legalMoves.m[mi].equals(be.move)) {
+                if (legalMoves.m[mi] == be.move.encode()) {
                     contains = true;
                     break;
                 }
             if  (!contains) {
                 // If an illegal move was found, it means there was a hash collision.
+                moveGen.returnMoveList(legalMoves);
                 return null;
             }
             sum += getWeight(bookMoves.get(i).count);
         }
+        moveGen.returnMoveList(legalMoves);
         if (sum <= 0) {
             return null;
         }
@@ -75,12 +75,14 @@ public class ComputerPlayer implements Player {
 	Search sc = new Search(pos, posHashList, posHashListSize, tt);
 
 	// Determine all legal moves
-	MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+	MoveGen moveGen = MoveGen.current();
+	MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 	MoveGen.removeIllegal(pos, moves);
 	sc.scoreMoveList(moves, 0);
 
 	// Test for "game over"
 	if (moves.size == 0) {
+	    moveGen.returnMoveList(moves);
 	    // Switch sides so that the human can decide what to do next.
 	    return "swap";
 	}
@@ -88,6 +90,7 @@ public class ComputerPlayer implements Player {
 	if (bookEnabled) {
 	    Move bookMove = book.getBookMove(pos);
 	    if (bookMove != null) {
+		moveGen.returnMoveList(moves);
 		// System.out.printf("Book moves: %s\n", book.getAllBookMoves(pos));
 		return TextIO.moveToString(pos, bookMove, false);
 	    }
@@ -97,8 +100,8 @@ public class ComputerPlayer implements Player {
 	currentSearch = sc;
 	sc.setListener(listener);
 	Move bestM;
-	if ((moves.size == 1) && (canClaimDraw(pos, posHashList, posHashListSize, moves.m[0]) == "")) {
-	    bestM = moves.m[0];
+	if ((moves.size == 1) && (canClaimDraw(pos, posHashList, posHashListSize, moves.getMove(0)) == "")) {
+	    bestM = moves.getMove(0);
 	    bestM.score = 0;
 	}
 	else if (randomMode) {
@@ -118,6 +121,7 @@ public class ComputerPlayer implements Player {
 	    if (drawClaim != "")
 		strMove = drawClaim;
 	}
+	moveGen.returnMoveList(moves);
 	return strMove;
     }
 
@@ -188,13 +192,15 @@ public class ComputerPlayer implements Player {
 	Search sc = new Search(pos, posHashList, 0, tt);
 
 	// Determine all legal moves
-	MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+	MoveGen moveGen = MoveGen.current();
+	MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 	MoveGen.removeIllegal(pos, moves);
 	sc.scoreMoveList(moves, 0);
 
 	// Find best move using iterative deepening
 	sc.timeLimit(maxTimeMillis, maxTimeMillis);
-	Move bestM = sc.iterativeDeepening(moves, -1, -1, false);
+	Move bestM = new Move(sc.iterativeDeepening(moves, -1, -1, false));
+	moveGen.returnMoveList(moves);
 
 	// Extract PV
 	String PV = TextIO.moveToString(pos, bestM, false) + " ";
@@ -219,13 +225,13 @@ public class ComputerPlayer implements Player {
 
 	int sum = 0;
 	for (int mi = 0; mi < moves.size; mi++) {
-	    sum += moveProbWeight(moves.m[mi].score, bestScore);
+	    sum += moveProbWeight(moves.score[mi], bestScore);
 	}
 	int rnd = rndGen.nextInt(sum);
 	for (int mi = 0; mi < moves.size; mi++) {
-	    int weight = moveProbWeight(moves.m[mi].score, bestScore);
+	    int weight = moveProbWeight(moves.score[mi], bestScore);
 	    if (rnd < weight) {
-		return moves.m[mi];
+		return moves.getMove(mi);
 	    }
 	    rnd -= weight;
 	}
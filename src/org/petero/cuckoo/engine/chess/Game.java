@@ -38,6 +38,13 @@ public class Game {
     public Position pos = null;
     protected Player whitePlayer;
     protected Player blackPlayer;
+    // Legal moves of the position they were generated for, identified by the
+    // position object and its hash. The list belongs to the game, so no move
+    // generator's list is kept between calls.
+    private MoveGen.MoveList legalMoves;
+    private Position legalMovesPos;
+    private long legalMovesHash;
+    private boolean legalMovesInCheck;
 
     public Game(Player whitePlayer, Player blackPlayer) {
 	this.whitePlayer = whitePlayer;
@@ -64,6 +71,46 @@ public class Game {
 	    return false;
 	}
 
+	makeMove(m);
+	return true;
+    }
+
+    /**
+     * Update the game state with a move from a player, without going through
+     * the move string.
+     * 
+     * @param m The move to play.
+     * @return True if the move is legal in the current position, false otherwise.
+     */
+    public boolean processMove(Move m) {
+	if (getGameState() != GameState.ALIVE) {
+	    return false;
+	}
+	if (!isLegalMove(m)) {
+	    return false;
+	}
+	makeMove(new Move(m)); // The move may be from a list which is reused
+	return true;
+    }
+
+    /**
+     * Check if a move is one of the legal moves in the current position.
+     */
+    protected final boolean isLegalMove(Move m) {
+	if (m == null) {
+	    return false;
+	}
+	MoveGen.MoveList moves = getLegalMoves();
+	int move = m.encode();
+	for (int i = 0; i < moves.size; i++) {
+	    if (moves.m[i] == move) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private void makeMove(Move m) {
 	UndoInfo ui = new UndoInfo();
 	pos.makeMove(m, ui);
 	TextIO.fixupEPSquare(pos);
@@ -77,7 +124,6 @@ public class Game {
 	drawOfferList.add(pendingDrawOffer);
 	pendingDrawOffer = false;
 	currentMove++;
-	return true;
     }
 
     public final String getGameStateString() {
@@ -146,10 +192,9 @@ public class Game {
      * Get the current state of the game.
      */
     public GameState getGameState() {
-	MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
-	MoveGen.removeIllegal(pos, moves);
+	MoveGen.MoveList moves = getLegalMoves();
 	if (moves.size == 0) {
-	    if (MoveGen.inCheck(pos)) {
+	    if (legalMovesInCheck) {
 		return pos.whiteMove ? GameState.BLACK_MATE : GameState.WHITE_MATE;
 	    }
 	    else {
@@ -165,6 +210,63 @@ public class Game {
 	return drawState;
     }
 
+    /**
+     * Get the legal moves in the current position. The moves are generated once
+     * with the move generator of the current thread and cached until the position
+     * changes, so the list must not be modified. The list is refilled when the
+     * position changes, so callers must not keep it across processMove() or
+     * processString(), and must copy any moves they want to keep.
+     */
+    public MoveGen.MoveList getLegalMoves() {
+	if (!haveLegalMoves()) {
+	    generateLegalMoves(MoveGen.current());
+	}
+	return legalMoves;
+    }
+
+    /**
+     * Check if the legal moves of the current position are cached.
+     */
+    protected final boolean haveLegalMoves() {
+	return (legalMovesPos == pos) && (legalMovesHash == pos.zobristHash());
+    }
+
+    /**
+     * Generate the legal moves of the current position with a move generator and
+     * cache them. The moves are copied into a list owned by the game and the
+     * generator's list is handed straight back to it, so the generator is only
+     * used by the calling thread during this call.
+     */
+    protected final void generateLegalMoves(MoveGen moveGen) {
+	legalMovesInCheck = MoveGen.inCheck(pos);
+	MoveGen.MoveList moves;
+	if (legalMovesInCheck) {
+	    moves = moveGen.checkEvasions(pos);
+	} else {
+	    moves = moveGen.pseudoLegalMoves(pos);
+	}
+	MoveGen.removeIllegal(pos, moves);
+	if (legalMoves == null) {
+	    legalMoves = new MoveGen.MoveList();
+	}
+	System.arraycopy(moves.m, 0, legalMoves.m, 0, moves.size);
+	System.arraycopy(moves.score, 0, legalMoves.score, 0, moves.size);
+	legalMoves.size = moves.size;
+	moveGen.returnMoveList(moves);
+	legalMovesPos = pos;
+	legalMovesHash = pos.zobristHash();
+    }
+
+    /**
+     * Drop the cached legal moves and their list. Call this when the game has
+     * ended or is about to be discarded. The moves are generated again if they
+     * are asked for later.
+     */
+    public void releaseLegalMoves() {
+	legalMoves = null;
+	legalMovesPos = null;
+    }
+
     /**
      * Check if a draw offer is available.
      * 
@@ -301,7 +403,7 @@ public class Game {
 	    try {
 		String depthStr = moveStr.substring(moveStr.indexOf(" ") + 1);
 		int depth = Integer.parseInt(depthStr);
-		MoveGen moveGen = new MoveGen();
+		MoveGen moveGen = MoveGen.current();
 		long t0 = System.currentTimeMillis();
 		long nodes = perfT(moveGen, pos, depth);
 		long t1 = System.currentTimeMillis();
@@ -592,7 +694,7 @@ public class Game {
 	}
 	UndoInfo ui = new UndoInfo();
 	for (int mi = 0; mi < moves.size; mi++) {
-	    Move m = moves.m[mi];
+	    int m = moves.m[mi];
 	    pos.makeMove(m, ui);
 	    nodes += perfT(moveGen, pos, depth - 1);
 	    pos.unMakeMove(m, ui);
@@ -42,39 +42,57 @@ public final class History {
 
     /** Record move as a success. */
     public final void addSuccess(Position pos, Move m, int depth) {
-        int p = pos.getPiece(m.from);
+        addSuccess(pos, m.encode(), depth);
+    }
+
+    /** Record an encoded move as a success. */
+    public final void addSuccess(Position pos, int move, int depth) {
+        int p = pos.getPiece(Move.getFrom(move));
+        int to = Move.getTo(move);
         int cnt = depth;
-        int val = countSuccess[p][m.to] + cnt;
+        int val = countSuccess[p][to] + cnt;
         if (val > 1000) {
             val /= 2;
-            countFail[p][m.to] /= 2;
+            countFail[p][to] /= 2;
         }
-        countSuccess[p][m.to] = val;
-        score[p][m.to] = -1;
+        countSuccess[p][to] = val;
+        score[p][to] = -1;
     }
 
     /** Record move as a failure. */
     public final void addFail(Position pos, Move m, int depth) {
-        int p = pos.getPiece(m.from);
+        addFail(pos, m.encode(), depth);
+    }
+
+    /** Record an encoded move as a failure. */
+    public final void addFail(Position pos, int move, int depth) {
+        int p = pos.getPiece(Move.getFrom(move));
+        int to = Move.getTo(move);
         int cnt = depth;
-        countFail[p][m.to] += cnt;
-        score[p][m.to] = -1;
+        countFail[p][to] += cnt;
+        score[p][to] = -1;
     }
 
     /** Get a score between 0 and 49, depending of the success/fail ratio of the move. */
     public final int getHistScore(Position pos, Move m) {
-        int p = pos.getPiece(m.from);
-        int ret = score[p][m.to];
+        return getHistScore(pos, m.encode());
+    }
+
+    /** Get a score between 0 and 49 for an encoded move. */
+    public final int getHistScore(Position pos, int move) {
+        int p = pos.getPiece(Move.getFrom(move));
+        int to = Move.getTo(move);
+        int ret = score[p][to];
         if (ret >= 0)
             return ret;
-        int succ = countSuccess[p][m.to];
-        int fail = countFail[p][m.to];
+        int succ = countSuccess[p][to];
+        int fail = countFail[p][to];
         if (succ + fail > 0) {
             ret = succ * 49 / (succ + fail);
         } else {
             ret = 0;
         }
-        score[p][m.to] = ret;
+        score[p][to] = ret;
         return ret;
     }
 }
@@ -42,9 +42,13 @@ public class KillerTable {
 
     /** Add a killer move to the table. Moves are replaced on an LRU basis. */
     final public void addKiller(int ply, Move m) {
+        addKiller(ply, m.encode());
+    }
+
+    /** Add a killer move, encoded with Move.encode(), to the table. */
+    final public void addKiller(int ply, int move) {
         if (ply >= ktList.length)
             return;
-        int move = (short)(m.from + (m.to << 6) + (m.promoteTo << 12));
         KTEntry ent = ktList[ply];
         if (move != ent.move0) {
             ent.move1 = ent.move0;
@@ -61,7 +65,11 @@ public class KillerTable {
      * The score is 0 otherwise.
      */
     final public int getKillerScore(int ply, Move m) {
-        int move = (short)(m.from + (m.to << 6) + (m.promoteTo << 12));
+        return getKillerScore(ply, m.encode());
+    }
+
+    /** Get a score for an encoded move based on hits in the killer table. */
+    final public int getKillerScore(int ply, int move) {
         if (ply < ktList.length) {
             KTEntry ent = ktList[ply];
             if (move == ent.move0) {
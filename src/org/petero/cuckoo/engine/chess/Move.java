@@ -65,6 +65,49 @@ public class Move {
         this.score = m.score;
     }
 
+    /** Create a move object from an encoded move. */
+    public Move(int move, int score) {
+        this.from = getFrom(move);
+        this.to = getTo(move);
+        this.promoteTo = getPromoteTo(move);
+        this.score = score;
+    }
+
+    /**
+     * Encode a move as an int, with the from square in bits 0-5, the to square
+     * in bits 6-11 and the promotion piece in bits 12-15.
+     */
+    public static final int encode(int from, int to, int promoteTo) {
+        return from | (to << 6) | (promoteTo << 12);
+    }
+
+    /** Get the from square of an encoded move. */
+    public static final int getFrom(int move) {
+        return move & 63;
+    }
+
+    /** Get the to square of an encoded move. */
+    public static final int getTo(int move) {
+        return (move >> 6) & 63;
+    }
+
+    /** Get the promotion piece of an encoded move. */
+    public static final int getPromoteTo(int move) {
+        return (move >> 12) & 15;
+    }
+
+    /** Encode this move as an int. The score is not included. */
+    public final int encode() {
+        return encode(from, to, promoteTo);
+    }
+
+    /** Set this move from an encoded move. The score is not changed. */
+    public final void setEncoded(int move) {
+        from = getFrom(move);
+        to = getTo(move);
+        promoteTo = getPromoteTo(move);
+    }
+
     public void copyFrom(Move m) {
         from      = m.from;
         to        = m.to;
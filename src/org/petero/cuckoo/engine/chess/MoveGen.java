@@ -23,18 +23,52 @@ package org.petero.cuckoo.engine.chess;
  * @author petero
  */
 public final class MoveGen {
-    static final MoveGen instance;
-    static {
-        instance = new MoveGen();
+    private static final ThreadLocal<MoveGen> threadInstance = ThreadLocal.withInitial(MoveGen::new);
+
+    /**
+     * Get the move generator of the current thread. Move lists from it are
+     * reused once returned with returnMoveList(), so a list and its moves must
+     * not be used after it has been returned, and it must only be used by the
+     * current thread.
+     */
+    public static MoveGen current() {
+        return threadInstance.get();
     }
 
+    /**
+     * A list of moves, encoded with Move.encode(), and their move ordering
+     * scores. Move objects are only made when asked for with getMove().
+     */
     public final static class MoveList {
-        public final Move[] m;
+        public final int[] m;
+        public final int[] score;
         public int size;
         MoveList() {
-            m = new Move[MAX_MOVES];
+            m = new int[MAX_MOVES];
+            score = new int[MAX_MOVES];
             this.size = 0;
         }
+
+        /** Get a move in the list as a new move object. */
+        public final Move getMove(int i) {
+            return new Move(m[i], score[i]);
+        }
+
+        /** Copy a move in the list into an existing move object. */
+        public final void getMove(int i, Move move) {
+            move.setEncoded(m[i]);
+            move.score = score[i];
+        }
+
+        /** Swap two moves in the list. */
+        public final void swap(int i, int j) {
+            int tmp = m[i];
+            m[i] = m[j];
+            m[j] = tmp;
+            tmp = score[i];
+            score[i] = score[j];
+            score[j] = tmp;
+        }
     }
 
     /**
@@ -760,23 +794,33 @@ public final class MoveGen {
      * Return true if making a move delivers check to the opponent
      */
     public static final boolean givesCheck(Position pos, Move m) {
+        return givesCheck(pos, m.encode());
+    }
+
+    /**
+     * Return true if making an encoded move delivers check to the opponent
+     */
+    public static final boolean givesCheck(Position pos, int move) {
+        final int from = Move.getFrom(move);
+        final int to = Move.getTo(move);
+        final int promoteTo = Move.getPromoteTo(move);
         boolean wtm = pos.whiteMove;
         int oKingSq = pos.getKingSq(!wtm);
         int oKing = wtm ? Piece.BKING : Piece.WKING;
-        int p = Piece.makeWhite(m.promoteTo == Piece.EMPTY ? pos.getPiece(m.from) : m.promoteTo);
-        int d1 = BitBoard.getDirection(m.to, oKingSq);
+        int p = Piece.makeWhite(promoteTo == Piece.EMPTY ? pos.getPiece(from) : promoteTo);
+        int d1 = BitBoard.getDirection(to, oKingSq);
         switch (d1) {
         case 8: case -8: case 1: case -1: // Rook direction
             if ((p == Piece.WQUEEN) || (p == Piece.WROOK))
-                if ((d1 != 0) && (MoveGen.nextPiece(pos, m.to, d1) == oKing))
+                if ((d1 != 0) && (MoveGen.nextPiece(pos, to, d1) == oKing))
                     return true;
             break;
         case 9: case 7: case -9: case -7: // Bishop direction
             if ((p == Piece.WQUEEN) || (p == Piece.WBISHOP)) {
-                if ((d1 != 0) && (MoveGen.nextPiece(pos, m.to, d1) == oKing))
+                if ((d1 != 0) && (MoveGen.nextPiece(pos, to, d1) == oKing))
                     return true;
             } else if (p == Piece.WPAWN) {
-                if (((d1 > 0) == wtm) && (pos.getPiece(m.to + d1) == oKing))
+                if (((d1 > 0) == wtm) && (pos.getPiece(to + d1) == oKing))
                     return true;
             }
             break;
@@ -786,9 +830,9 @@ public final class MoveGen {
                     return true;
             }
         }
-        int d2 = BitBoard.getDirection(m.from, oKingSq);
-        if ((d2 != 0) && (d2 != d1) && (MoveGen.nextPiece(pos, m.from, d2) == oKing)) {
-            int p2 = MoveGen.nextPieceSafe(pos, m.from, -d2);
+        int d2 = BitBoard.getDirection(from, oKingSq);
+        if ((d2 != 0) && (d2 != d1) && (MoveGen.nextPiece(pos, from, d2) == oKing)) {
+            int p2 = MoveGen.nextPieceSafe(pos, from, -d2);
             switch (d2) {
             case 8: case -8: case 1: case -1: // Rook direction
                 if ((p2 == (wtm ? Piece.WQUEEN : Piece.BQUEEN)) ||
@@ -802,38 +846,38 @@ public final class MoveGen {
                 break;
             }
         }
-        if ((m.promoteTo != Piece.EMPTY) && (d1 != 0) && (d1 == d2)) {
+        if ((promoteTo != Piece.EMPTY) && (d1 != 0) && (d1 == d2)) {
             switch (d1) {
             case 8: case -8: case 1: case -1: // Rook direction
                 if ((p == Piece.WQUEEN) || (p == Piece.WROOK))
-                    if ((d1 != 0) && (MoveGen.nextPiece(pos, m.from, d1) == oKing))
+                    if ((d1 != 0) && (MoveGen.nextPiece(pos, from, d1) == oKing))
                         return true;
                 break;
             case 9: case 7: case -9: case -7: // Bishop direction
                 if ((p == Piece.WQUEEN) || (p == Piece.WBISHOP)) {
-                    if ((d1 != 0) && (MoveGen.nextPiece(pos, m.from, d1) == oKing))
+                    if ((d1 != 0) && (MoveGen.nextPiece(pos, from, d1) == oKing))
                         return true;
                 }
                 break;
             }
         }
         if (p == Piece.WKING) {
-            if (m.to - m.from == 2) { // O-O
-                if (MoveGen.nextPieceSafe(pos, m.from, -1) == oKing)
+            if (to - from == 2) { // O-O
+                if (MoveGen.nextPieceSafe(pos, from, -1) == oKing)
                     return true;
-                if (MoveGen.nextPieceSafe(pos, m.from + 1, wtm ? 8 : -8) == oKing)
+                if (MoveGen.nextPieceSafe(pos, from + 1, wtm ? 8 : -8) == oKing)
                     return true;
-            } else if (m.to - m.from == -2) { // O-O-O
-                if (MoveGen.nextPieceSafe(pos, m.from, 1) == oKing)
+            } else if (to - from == -2) { // O-O-O
+                if (MoveGen.nextPieceSafe(pos, from, 1) == oKing)
                     return true;
-                if (MoveGen.nextPieceSafe(pos, m.from - 1, wtm ? 8 : -8) == oKing)
+                if (MoveGen.nextPieceSafe(pos, from - 1, wtm ? 8 : -8) == oKing)
                     return true;
             }
         } else if (p == Piece.WPAWN) {
-            if (pos.getPiece(m.to) == Piece.EMPTY) {
-                int dx = Position.getX(m.to) - Position.getX(m.from);
+            if (pos.getPiece(to) == Piece.EMPTY) {
+                int dx = Position.getX(to) - Position.getX(from);
                 if (dx != 0) { // en passant
-                    int epSq = m.from + dx;
+                    int epSq = from + dx;
                     int d3 = BitBoard.getDirection(epSq, oKingSq);
                     switch (d3) {
                     case 9: case 7: case -9: case -7:
@@ -845,16 +889,16 @@ public final class MoveGen {
                         }
                         break;
                     case 1:
-                        if (MoveGen.nextPiece(pos, Math.max(epSq, m.from), d3) == oKing) {
-                            int p2 = MoveGen.nextPieceSafe(pos, Math.min(epSq, m.from), -d3);
+                        if (MoveGen.nextPiece(pos, Math.max(epSq, from), d3) == oKing) {
+                            int p2 = MoveGen.nextPieceSafe(pos, Math.min(epSq, from), -d3);
                             if ((p2 == (wtm ? Piece.WQUEEN : Piece.BQUEEN)) ||
                                 (p2 == (wtm ? Piece.WROOK : Piece.BROOK)))
                                 return true;
                         }
                         break;
                     case -1:
-                        if (MoveGen.nextPiece(pos, Math.min(epSq, m.from), d3) == oKing) {
-                            int p2 = MoveGen.nextPieceSafe(pos, Math.max(epSq, m.from), -d3);
+                        if (MoveGen.nextPiece(pos, Math.min(epSq, from), d3) == oKing) {
+                            int p2 = MoveGen.nextPieceSafe(pos, Math.max(epSq, from), -d3);
                             if ((p2 == (wtm ? Piece.WQUEEN : Piece.BQUEEN)) ||
                                 (p2 == (wtm ? Piece.WROOK : Piece.BROOK)))
                                 return true;
@@ -928,9 +972,11 @@ public final class MoveGen {
         if (isInCheck) {
             kingAtks |= pos.pieceTypeBB[pos.whiteMove ? Piece.BKNIGHT : Piece.WKNIGHT];
             for (int mi = 0; mi < moveList.size; mi++) {
-                Move m = moveList.m[mi];
+                int m = moveList.m[mi];
+                int from = Move.getFrom(m);
+                int to = Move.getTo(m);
                 boolean legal;
-                if ((m.from != kSq) && ((kingAtks & (1L<<m.to)) == 0) && (m.to != epSquare)) {
+                if ((from != kSq) && ((kingAtks & (1L<<to)) == 0) && (to != epSquare)) {
                     legal = false;
                 } else {
                     pos.makeMove(m, ui);
@@ -939,14 +985,18 @@ public final class MoveGen {
                     pos.setWhiteMove(!pos.whiteMove);
                     pos.unMakeMove(m, ui);
                 }
-                if (legal)
-                    moveList.m[length++].copyFrom(m);
+                if (legal) {
+                    moveList.m[length] = m;
+                    moveList.score[length++] = moveList.score[mi];
+                }
             }
         } else {
             for (int mi = 0; mi < moveList.size; mi++) {
-                Move m = moveList.m[mi];
+                int m = moveList.m[mi];
+                int from = Move.getFrom(m);
+                int to = Move.getTo(m);
                 boolean legal;
-                if ((m.from != kSq) && ((kingAtks & (1L<<m.from)) == 0) && (m.to != epSquare)) {
+                if ((from != kSq) && ((kingAtks & (1L<<from)) == 0) && (to != epSquare)) {
                     legal = true;
                 } else {
                     pos.makeMove(m, ui);
@@ -955,8 +1005,10 @@ public final class MoveGen {
                     pos.setWhiteMove(!pos.whiteMove);
                     pos.unMakeMove(m, ui);
                 }
-                if (legal)
-                    moveList.m[length++].copyFrom(m);
+                if (legal) {
+                    moveList.m[length] = m;
+                    moveList.score[length++] = moveList.score[mi];
+                }
             }
         }
         moveList.size = length;
@@ -1029,11 +1081,9 @@ public final class MoveGen {
     }
 
     private final static void setMove(MoveList moveList, int from, int to, int promoteTo) {
-        Move m = moveList.m[moveList.size++];
-        m.from = from;
-        m.to = to;
-        m.promoteTo = promoteTo;
-        m.score = 0;
+        int i = moveList.size++;
+        moveList.m[i] = Move.encode(from, to, promoteTo);
+        moveList.score[i] = 0;
     }
 
     // Code to handle the Move cache.
@@ -1049,13 +1099,11 @@ public final class MoveGen {
             ml.size = 0;
         } else {
             ml = new MoveList();
-            for (int i = 0; i < MAX_MOVES; i++)
-                ml.m[i] = new Move(0, 0, Piece.EMPTY);
         }
         return ml;
     }
 
-    /** Return all move objects in moveList to the move cache. */
+    /** Return moveList to the move list cache. */
     public final void returnMoveList(MoveList moveList) {
         if (moveListsInCache < moveListCache.length) {
             moveListCache[moveListsInCache++] = moveList;
@@ -0,0 +1,37 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.util.List;
+
+/**
+ * Interface for players which choose moves directly, so a game can play their
+ * moves without formatting and parsing move strings.
+ */
+public interface MovePlayer extends Player {
+    /**
+     * Get the move a player makes.
+     * @param pos The current position.
+     * @param moves The legal moves in the current position, which must not be modified.
+     * @param drawOffer True if the opponent has offered a draw.
+     * @param history List of earlier positions (not including the current position).
+     * @return One of the legal moves. The game copies the move, so the player may reuse the object.
+     */
+    public Move getMove(Position pos, MoveGen.MoveList moves, boolean drawOffer, List<Position> history);
+}
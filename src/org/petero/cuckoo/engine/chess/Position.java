@@ -377,15 +377,23 @@ public class Position {
 
     /** Apply a move to the current position. */
     public final void makeMove(Move move, UndoInfo ui) {
-        ui.capturedPiece = squares[move.to];
+        makeMove(move.encode(), ui);
+    }
+
+    /** Apply a move encoded with Move.encode() to the current position. */
+    public final void makeMove(int move, UndoInfo ui) {
+        final int from = Move.getFrom(move);
+        final int to = Move.getTo(move);
+        final int promoteTo = Move.getPromoteTo(move);
+        ui.capturedPiece = squares[to];
         ui.castleMask = castleMask;
         ui.epSquare = epSquare;
         ui.halfMoveClock = halfMoveClock;
         boolean wtm = whiteMove;
         
-        final int p = squares[move.from];
-        int capP = squares[move.to];
-        long fromMask = 1L << move.from;
+        final int p = squares[from];
+        int capP = squares[to];
+        long fromMask = 1L << from;
 
         int prevEpSquare = epSquare;
         setEpSquare(-1);
@@ -395,24 +403,24 @@ public class Position {
 
             // Handle en passant and epSquare
             if (p == Piece.WPAWN) {
-                if (move.to - move.from == 2 * 8) {
-                    int x = Position.getX(move.to);
-                    if (    ((x > 0) && (squares[move.to - 1] == Piece.BPAWN)) ||
-                            ((x < 7) && (squares[move.to + 1] == Piece.BPAWN))) {
-                        setEpSquare(move.from + 8);
+                if (to - from == 2 * 8) {
+                    int x = Position.getX(to);
+                    if (    ((x > 0) && (squares[to - 1] == Piece.BPAWN)) ||
+                            ((x < 7) && (squares[to + 1] == Piece.BPAWN))) {
+                        setEpSquare(from + 8);
                     }
-                } else if (move.to == prevEpSquare) {
-                    setPiece(move.to - 8, Piece.EMPTY);
+                } else if (to == prevEpSquare) {
+                    setPiece(to - 8, Piece.EMPTY);
                 }
             } else if (p == Piece.BPAWN) {
-                if (move.to - move.from == -2 * 8) {
-                    int x = Position.getX(move.to);
-                    if (    ((x > 0) && (squares[move.to - 1] == Piece.WPAWN)) ||
-                            ((x < 7) && (squares[move.to + 1] == Piece.WPAWN))) {
-                        setEpSquare(move.from - 8);
+                if (to - from == -2 * 8) {
+                    int x = Position.getX(to);
+                    if (    ((x > 0) && (squares[to - 1] == Piece.WPAWN)) ||
+                            ((x < 7) && (squares[to + 1] == Piece.WPAWN))) {
+                        setEpSquare(from - 8);
                     }
-                } else if (move.to == prevEpSquare) {
-                    setPiece(move.to + 8, Piece.EMPTY);
+                } else if (to == prevEpSquare) {
+                    setPiece(to + 8, Piece.EMPTY);
                 }
             }
 
@@ -427,22 +435,22 @@ public class Position {
             }
 
             // Perform move
-            setPiece(move.from, Piece.EMPTY);
+            setPiece(from, Piece.EMPTY);
             // Handle promotion
-            if (move.promoteTo != Piece.EMPTY) {
-                setPiece(move.to, move.promoteTo);
+            if (promoteTo != Piece.EMPTY) {
+                setPiece(to, promoteTo);
             } else {
-                setPiece(move.to, p);
+                setPiece(to, p);
             }
         } else {
             halfMoveClock++;
 
             // Handle castling
             if (((pieceTypeBB[Piece.WKING] | pieceTypeBB[Piece.BKING]) & fromMask) != 0) {
-                int k0 = move.from;
-                if (move.to == k0 + 2) { // O-O
+                int k0 = from;
+                if (to == k0 + 2) { // O-O
                     movePieceNotPawn(k0 + 3, k0 + 1);
-                } else if (move.to == k0 - 2) { // O-O-O
+                } else if (to == k0 - 2) { // O-O-O
                     movePieceNotPawn(k0 - 4, k0 - 1);
                 }
                 if (wtm) {
@@ -455,28 +463,28 @@ public class Position {
             }
 
             // Perform move
-            movePieceNotPawn(move.from, move.to);
+            movePieceNotPawn(from, to);
         }
         if (wtm) {
             // Update castling rights when rook moves
             if ((BitBoard.maskCorners & fromMask) != 0) {
                 if (p == Piece.WROOK)
-                    removeCastleRights(move.from);
+                    removeCastleRights(from);
             }
-            if ((BitBoard.maskCorners & (1L << move.to)) != 0) {
+            if ((BitBoard.maskCorners & (1L << to)) != 0) {
                 if (capP == Piece.BROOK)
-                    removeCastleRights(move.to);
+                    removeCastleRights(to);
             }
         } else {
             fullMoveCounter++;
             // Update castling rights when rook moves
             if ((BitBoard.maskCorners & fromMask) != 0) {
                 if (p == Piece.BROOK)
-                    removeCastleRights(move.from);
+                    removeCastleRights(from);
             }
-            if ((BitBoard.maskCorners & (1L << move.to)) != 0) {
+            if ((BitBoard.maskCorners & (1L << to)) != 0) {
                 if (capP == Piece.WROOK)
-                    removeCastleRights(move.to);
+                    removeCastleRights(to);
             }
         }
 
@@ -485,18 +493,25 @@ public class Position {
     }
 
     public final void unMakeMove(Move move, UndoInfo ui) {
+        unMakeMove(move.encode(), ui);
+    }
+
+    public final void unMakeMove(int move, UndoInfo ui) {
+        final int from = Move.getFrom(move);
+        final int to = Move.getTo(move);
+        final int promoteTo = Move.getPromoteTo(move);
         hashKey ^= whiteHashKey;
         whiteMove = !whiteMove;
-        int p = squares[move.to];
-        setPiece(move.from, p);
-        setPiece(move.to, ui.capturedPiece);
+        int p = squares[to];
+        setPiece(from, p);
+        setPiece(to, ui.capturedPiece);
         setCastleMask(ui.castleMask);
         setEpSquare(ui.epSquare);
         halfMoveClock = ui.halfMoveClock;
         boolean wtm = whiteMove;
-        if (move.promoteTo != Piece.EMPTY) {
+        if (promoteTo != Piece.EMPTY) {
             p = wtm ? Piece.WPAWN : Piece.BPAWN;
-            setPiece(move.from, p);
+            setPiece(from, p);
         }
         if (!wtm) {
             fullMoveCounter--;
@@ -505,20 +520,20 @@ public class Position {
         // Handle castling
         int king = wtm ? Piece.WKING : Piece.BKING;
         if (p == king) {
-            int k0 = move.from;
-            if (move.to == k0 + 2) { // O-O
+            int k0 = from;
+            if (to == k0 + 2) { // O-O
                 movePieceNotPawn(k0 + 1, k0 + 3);
-            } else if (move.to == k0 - 2) { // O-O-O
+            } else if (to == k0 - 2) { // O-O-O
                 movePieceNotPawn(k0 - 1, k0 - 4);
             }
         }
 
         // Handle en passant
-        if (move.to == epSquare) {
+        if (to == epSquare) {
             if (p == Piece.WPAWN) {
-                setPiece(move.to - 8, Piece.BPAWN);
+                setPiece(to - 8, Piece.BPAWN);
             } else if (p == Piece.BPAWN) {
-                setPiece(move.to + 8, Piece.WPAWN);
+                setPiece(to + 8, Piece.WPAWN);
             }
         }
     }
@@ -528,65 +543,78 @@ public class Position {
      * Special version that only updates enough of the state for the SEE function to be happy.
      */
     public final void makeSEEMove(Move move, UndoInfo ui) {
-        ui.capturedPiece = squares[move.to];
+        makeSEEMove(move.encode(), ui);
+    }
+
+    /** Encoded move version of makeSEEMove(Move, UndoInfo). */
+    public final void makeSEEMove(int move, UndoInfo ui) {
+        final int from = Move.getFrom(move);
+        final int to = Move.getTo(move);
+        ui.capturedPiece = squares[to];
         boolean wtm = whiteMove;
         
-        int p = squares[move.from];
-        long fromMask = 1L << move.from;
+        int p = squares[from];
+        long fromMask = 1L << from;
 
         // Handle castling
         if (((pieceTypeBB[Piece.WKING] | pieceTypeBB[Piece.BKING]) & fromMask) != 0) {
-            int k0 = move.from;
-            if (move.to == k0 + 2) { // O-O
+            int k0 = from;
+            if (to == k0 + 2) { // O-O
                 setSEEPiece(k0 + 1, squares[k0 + 3]);
                 setSEEPiece(k0 + 3, Piece.EMPTY);
-            } else if (move.to == k0 - 2) { // O-O-O
+            } else if (to == k0 - 2) { // O-O-O
                 setSEEPiece(k0 - 1, squares[k0 - 4]);
                 setSEEPiece(k0 - 4, Piece.EMPTY);
             }
         }
 
         // Handle en passant
-        if (move.to == epSquare) {
+        if (to == epSquare) {
             if (p == Piece.WPAWN) {
-                setSEEPiece(move.to - 8, Piece.EMPTY);
+                setSEEPiece(to - 8, Piece.EMPTY);
             } else if (p == Piece.BPAWN) {
-                setSEEPiece(move.to + 8, Piece.EMPTY);
+                setSEEPiece(to + 8, Piece.EMPTY);
             }
         }
 
         // Perform move
-        setSEEPiece(move.from, Piece.EMPTY);
-        setSEEPiece(move.to, p);
+        setSEEPiece(from, Piece.EMPTY);
+        setSEEPiece(to, p);
         whiteMove = !wtm;
     }
 
     public final void unMakeSEEMove(Move move, UndoInfo ui) {
+        unMakeSEEMove(move.encode(), ui);
+    }
+
+    public final void unMakeSEEMove(int move, UndoInfo ui) {
+        final int from = Move.getFrom(move);
+        final int to = Move.getTo(move);
         whiteMove = !whiteMove;
-        int p = squares[move.to];
-        setSEEPiece(move.from, p);
-        setSEEPiece(move.to, ui.capturedPiece);
+        int p = squares[to];
+        setSEEPiece(from, p);
+        setSEEPiece(to, ui.capturedPiece);
         boolean wtm = whiteMove;
 
         // Handle castling
         int king = wtm ? Piece.WKING : Piece.BKING;
         if (p == king) {
-            int k0 = move.from;
-            if (move.to == k0 + 2) { // O-O
+            int k0 = from;
+            if (to == k0 + 2) { // O-O
                 setSEEPiece(k0 + 3, squares[k0 + 1]);
                 setSEEPiece(k0 + 1, Piece.EMPTY);
-            } else if (move.to == k0 - 2) { // O-O-O
+            } else if (to == k0 - 2) { // O-O-O
                 setSEEPiece(k0 - 4, squares[k0 - 1]);
                 setSEEPiece(k0 - 1, Piece.EMPTY);
             }
         }
 
         // Handle en passant
-        if (move.to == epSquare) {
+        if (to == epSquare) {
             if (p == Piece.WPAWN) {
-                setSEEPiece(move.to - 8, Piece.BPAWN);
+                setSEEPiece(to - 8, Piece.BPAWN);
             } else if (p == Piece.BPAWN) {
-                setSEEPiece(move.to + 8, Piece.WPAWN);
+                setSEEPiece(to + 8, Piece.WPAWN);
             }
         }
     }
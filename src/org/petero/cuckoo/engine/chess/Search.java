@@ -29,7 +29,7 @@ public class Search {
 	final static int plyScale = 8; // Fractional ply resolution
 
 	Position pos;
-	MoveGen moveGen;
+	MoveGen moveGen; // Move generator of the thread the search was created on
 	Evaluate eval;
 	KillerTable kt;
 	History ht;
@@ -41,18 +41,17 @@ public class Search {
 
 	private static final class SearchTreeInfo {
 		UndoInfo undoInfo;
-		Move hashMove; // Temporary storage for local hashMove variable
 		boolean allowNullMove; // Don't allow two null-moves in a row
-		Move bestMove; // Copy of the best found move at this ply
-		Move currentMove; // Move currently being searched
+		int bestMove; // Best found move at this ply, encoded with Move.encode()
+		int currentMove; // Move currently being searched, encoded with Move.encode()
 		int lmr; // LMR reduction amount
 		long nodeIdx;
 
 		SearchTreeInfo() {
 			undoInfo = new UndoInfo();
-			hashMove = new Move(0, 0, 0);
 			allowNullMove = true;
-			bestMove = new Move(0, 0, 0);
+			bestMove = EMPTY_MOVE;
+			currentMove = EMPTY_MOVE;
 		}
 	}
 
@@ -88,7 +87,7 @@ public class Search {
 
 	public Search(Position pos, long[] posHashList, int posHashListSize, TranspositionTable tt) {
 		this.pos = new Position(pos);
-		this.moveGen = new MoveGen();
+		this.moveGen = MoveGen.current();
 		this.posHashList = posHashList;
 		this.posHashListSize = posHashListSize;
 		this.tt = tt;
@@ -140,10 +139,12 @@ public class Search {
 
 	private final static class MoveInfo {
 		Move move;
+		int index; // Index of the move in the root move list
 		int nodes;
 
-		MoveInfo(Move m, int n) {
+		MoveInfo(Move m, int i, int n) {
 			move = m;
+			index = i;
 			nodes = n;
 		}
 
@@ -197,8 +198,8 @@ public class Search {
 			return null; // No moves to search
 		MoveInfo[] scMoves = new MoveInfo[scMovesIn.size];
 		for (int mi = 0, len = 0; mi < scMovesIn.size; mi++) {
-			Move m = scMovesIn.m[mi];
-			scMoves[len++] = new MoveInfo(m, 0);
+			Move m = scMovesIn.getMove(mi);
+			scMoves[len++] = new MoveInfo(m, mi, 0);
 		}
 		maxNodes = initialMaxNodes;
 		nodesToGo = 0;
@@ -257,7 +258,7 @@ public class Search {
 					 */
 					pos.makeMove(m, ui);
 					SearchTreeInfo sti = searchTreeInfo[0];
-					sti.currentMove = m;
+					sti.currentMove = m.encode();
 					sti.lmr = lmr * plyScale;
 					sti.nodeIdx = -1;
 					int score = -negaScout(-beta, -alpha, 1, (depth - lmr - 1) * plyScale, -1, givesCheck);
@@ -398,6 +399,8 @@ public class Search {
 		} catch (StopSearch ss) {
 			pos = origPos;
 		}
+		for (int mi = 0; mi < scMoves.length; mi++)
+			scMovesIn.score[scMoves[mi].index] = scMoves[mi].move.score;
 		notifyStats();
 
 		if (log != null) {
@@ -435,7 +438,12 @@ public class Search {
 		tLastStats = tNow;
 	}
 
-	private static final Move emptyMove = new Move(0, 0, Piece.EMPTY, 0);
+	private static final int EMPTY_MOVE = Move.encode(0, 0, Piece.EMPTY);
+
+	/** Return true if an encoded move is the empty move, which has the same from and to squares. */
+	private static final boolean isEmpty(int move) {
+		return Move.getFrom(move) == Move.getTo(move);
+	}
 
 	/**
 	 * Main recursive search algorithm.
@@ -505,7 +513,7 @@ public class Search {
 		int evalScore = UNKNOWN_SCORE;
 		// Check transposition table
 		TTEntry ent = tt.probe(hKey);
-		Move hashMove = null;
+		int hashMove = EMPTY_MOVE;
 		SearchTreeInfo sti = searchTreeInfo[ply];
 		if (ent.type != TTEntry.T_EMPTY) {
 			int score = ent.getScore(ply);
@@ -515,10 +523,9 @@ public class Search {
 			if ((beta == alpha + 1) && ((eDepth >= depth) || (eDepth >= plyToMate * plyScale))) {
 				if ((ent.type == TTEntry.T_EXACT) || (ent.type == TTEntry.T_GE) && (score >= beta) || (ent.type == TTEntry.T_LE) && (score <= alpha)) {
 					if (score >= beta) {
-						hashMove = sti.hashMove;
-						ent.getMove(hashMove);
-						if ((hashMove != null) && (hashMove.from != hashMove.to))
-							if (pos.getPiece(hashMove.to) == Piece.EMPTY)
+						hashMove = ent.getMove();
+						if (!isEmpty(hashMove))
+							if (pos.getPiece(Move.getTo(hashMove)) == Piece.EMPTY)
 								kt.addKiller(ply, hashMove);
 					}
 					if (log != null)
@@ -526,8 +533,7 @@ public class Search {
 					return score;
 				}
 			}
-			hashMove = sti.hashMove;
-			ent.getMove(hashMove);
+			hashMove = ent.getMove();
 		}
 
 		int posExtend = inCheck ? plyScale : 0; // Check extension
@@ -544,8 +550,7 @@ public class Search {
 			} else if (score >= beta) {
 				type = TTEntry.T_GE;
 			}
-			emptyMove.score = score;
-			tt.insert(hKey, emptyMove, type, ply, depth, q0Eval);
+			tt.insert(hKey, EMPTY_MOVE, score, type, ply, depth, q0Eval);
 			if (log != null)
 				log.logNodeEnd(sti.nodeIdx, score, type, evalScore, hKey);
 			return score;
@@ -553,7 +558,7 @@ public class Search {
 
 		// Try null-move pruning
 		// FIXME! Try null-move verification in late endgames. See loss in round 21.
-		sti.currentMove = emptyMove;
+		sti.currentMove = EMPTY_MOVE;
 		if ((depth >= 3 * plyScale) && !inCheck && sti.allowNullMove && (Math.abs(beta) <= MATE0 / 2)) {
 			if (MoveGen.canTakeKing(pos)) {
 				int score = MATE0 - ply;
@@ -586,17 +591,18 @@ public class Search {
 				if (score >= beta) {
 					if (score > MATE0 / 2)
 						score = beta;
-					emptyMove.score = score;
-					tt.insert(hKey, emptyMove, TTEntry.T_GE, ply, depth, evalScore);
+					tt.insert(hKey, EMPTY_MOVE, score, TTEntry.T_GE, ply, depth, evalScore);
 					if (log != null)
 						log.logNodeEnd(sti.nodeIdx, score, TTEntry.T_GE, evalScore, hKey);
 					return score;
 				} else {
 					if ((searchTreeInfo[ply - 1].lmr > 0) && (depth < 5 * plyScale)) {
-						Move m1 = searchTreeInfo[ply - 1].currentMove;
-						Move m2 = searchTreeInfo[ply + 1].bestMove; // threat move
-						if (m1.from != m1.to) {
-							if ((m1.to == m2.from) || (m1.from == m2.to) || ((BitBoard.squaresBetween[m2.from][m2.to] & (1L << m1.from)) != 0)) {
+						int m1 = searchTreeInfo[ply - 1].currentMove;
+						int m2 = searchTreeInfo[ply + 1].bestMove; // threat move
+						if (!isEmpty(m1)) {
+							int m1From = Move.getFrom(m1), m1To = Move.getTo(m1);
+							int m2From = Move.getFrom(m2), m2To = Move.getTo(m2);
+							if ((m1To == m2From) || (m1From == m2To) || ((BitBoard.squaresBetween[m2From][m2To] & (1L << m1From)) != 0)) {
 								// if the threat move was made possible by a reduced
 								// move on the previous ply, the reduction was unsafe.
 								// Return alpha to trigger a non-reduced re-search.
@@ -622,8 +628,7 @@ public class Search {
 				q0Eval = evalScore;
 				int score = quiesce(alpha - razorMargin, beta - razorMargin, ply, 0, inCheck);
 				if (score <= alpha - razorMargin) {
-					emptyMove.score = score;
-					tt.insert(hKey, emptyMove, TTEntry.T_LE, ply, depth, evalScore);
+					tt.insert(hKey, EMPTY_MOVE, score, TTEntry.T_LE, ply, depth, evalScore);
 					if (log != null)
 						log.logNodeEnd(sti.nodeIdx, score, TTEntry.T_LE, evalScore, hKey);
 					return score;
@@ -655,7 +660,7 @@ public class Search {
 			}
 		}
 
-		if ((depth > 4 * plyScale) && ((hashMove == null) || (hashMove.from == hashMove.to))) {
+		if ((depth > 4 * plyScale) && isEmpty(hashMove)) {
 			boolean isPv = beta > alpha + 1;
 			if (isPv || (depth > 8 * plyScale)) {
 				// No hash move. Try internal iterative deepening.
@@ -665,8 +670,7 @@ public class Search {
 				sti.nodeIdx = savedNodeIdx;
 				ent = tt.probe(hKey);
 				if (ent.type != TTEntry.T_EMPTY) {
-					hashMove = sti.hashMove;
-					ent.getMove(hashMove);
+					hashMove = ent.getMove();
 				}
 			}
 		}
@@ -701,8 +705,10 @@ public class Search {
 			if ((mi > 0) || !hashMoveSelected) {
 				selectBest(moves, mi);
 			}
-			Move m = moves.m[mi];
-			if (pos.getPiece(m.to) == (pos.whiteMove ? Piece.BKING : Piece.WKING)) {
+			final int m = moves.m[mi];
+			final int mFrom = Move.getFrom(m);
+			final int mTo = Move.getTo(m);
+			if (pos.getPiece(mTo) == (pos.whiteMove ? Piece.BKING : Piece.WKING)) {
 				moveGen.returnMoveList(moves);
 				int score = MATE0 - ply;
 				if (log != null)
@@ -710,11 +716,12 @@ public class Search {
 				return score; // King capture
 			}
 			int newCaptureSquare = -1;
-			boolean isCapture = (pos.getPiece(m.to) != Piece.EMPTY);
-			boolean isPromotion = (m.promoteTo != Piece.EMPTY);
+			boolean isCapture = (pos.getPiece(mTo) != Piece.EMPTY);
+			boolean isPromotion = (Move.getPromoteTo(m) != Piece.EMPTY);
 			int sVal = Integer.MIN_VALUE;
 			// FIXME! Test extending pawn pushes to 7:th rank
-			boolean mayReduce = (m.score < 53) && (!isCapture || m.score < 0) && !isPromotion;
+			final int mScore = moves.score[mi];
+			boolean mayReduce = (mScore < 53) && (!isCapture || mScore < 0) && !isPromotion;
 			boolean givesCheck = MoveGen.givesCheck(pos, m);
 			boolean doFutility = false;
 			if (futilityPrune && mayReduce && haveLegalMoves) {
@@ -728,16 +735,16 @@ public class Search {
 				int moveExtend = 0;
 				if (posExtend == 0) {
 					final int pV = Evaluate.pV;
-					if ((m.to == recaptureSquare)) {
+					if ((mTo == recaptureSquare)) {
 						if (sVal == Integer.MIN_VALUE)
 							sVal = SEE(m);
-						int tVal = Evaluate.pieceValue[pos.getPiece(m.to)];
+						int tVal = Evaluate.pieceValue[pos.getPiece(mTo)];
 						if (sVal > tVal - pV / 2)
 							moveExtend = plyScale;
 					}
 					if ((moveExtend < plyScale) && isCapture && (pos.wMtrlPawns + pos.bMtrlPawns > pV)) {
 						// Extend if going into pawn endgame
-						int capVal = Evaluate.pieceValue[pos.getPiece(m.to)];
+						int capVal = Evaluate.pieceValue[pos.getPiece(mTo)];
 						if (pos.whiteMove) {
 							if ((pos.wMtrl == pos.wMtrlPawns) && (pos.bMtrl - pos.bMtrlPawns == capVal))
 								moveExtend = plyScale;
@@ -763,13 +770,13 @@ public class Search {
 				if (isCapture && (givesCheck || (depth + extend) > plyScale)) {
 					// Compute recapture target square, but only if we are not going
 					// into q-search at the next ply.
-					int fVal = Evaluate.pieceValue[pos.getPiece(m.from)];
-					int tVal = Evaluate.pieceValue[pos.getPiece(m.to)];
+					int fVal = Evaluate.pieceValue[pos.getPiece(mFrom)];
+					int tVal = Evaluate.pieceValue[pos.getPiece(mTo)];
 					final int pV = Evaluate.pV;
 					if (Math.abs(tVal - fVal) < pV / 2) { // "Equal" capture
 						sVal = SEE(m);
 						if (Math.abs(sVal) < pV / 2)
-							newCaptureSquare = m.to;
+							newCaptureSquare = mTo;
 					}
 				}
 				posHashList[posHashListSize++] = pos.zobristHash();
@@ -808,7 +815,7 @@ public class Search {
 			if (weak && haveLegalMoves)
 				if (weakPlaySkipMove(pos, m, ply))
 					score = illegalScore;
-			m.score = score;
+			moves.score[mi] = score;
 
 			if (score != illegalScore) {
 				haveLegalMoves = true;
@@ -817,21 +824,19 @@ public class Search {
 			if (score > alpha) {
 				alpha = score;
 				bestMove = mi;
-				sti.bestMove.from = m.from;
-				sti.bestMove.to = m.to;
-				sti.bestMove.promoteTo = m.promoteTo;
+				sti.bestMove = m;
 			}
 			if (alpha >= beta) {
-				if (pos.getPiece(m.to) == Piece.EMPTY) {
+				if (pos.getPiece(mTo) == Piece.EMPTY) {
 					kt.addKiller(ply, m);
 					ht.addSuccess(pos, m, depth / plyScale);
 					for (int mi2 = mi - 1; mi2 >= 0; mi2--) {
-						Move m2 = moves.m[mi2];
-						if (pos.getPiece(m2.to) == Piece.EMPTY)
+						int m2 = moves.m[mi2];
+						if (pos.getPiece(Move.getTo(m2)) == Piece.EMPTY)
 							ht.addFail(pos, m2, depth / plyScale);
 					}
 				}
-				tt.insert(hKey, m, TTEntry.T_GE, ply, depth, evalScore);
+				tt.insert(hKey, m, score, TTEntry.T_GE, ply, depth, evalScore);
 				moveGen.returnMoveList(moves);
 				if (log != null)
 					log.logNodeEnd(sti.nodeIdx, alpha, TTEntry.T_GE, evalScore, hKey);
@@ -846,12 +851,11 @@ public class Search {
 			return 0; // Stale-mate
 		}
 		if (bestMove >= 0) {
-			tt.insert(hKey, moves.m[bestMove], TTEntry.T_EXACT, ply, depth, evalScore);
+			tt.insert(hKey, moves.m[bestMove], moves.score[bestMove], TTEntry.T_EXACT, ply, depth, evalScore);
 			if (log != null)
 				log.logNodeEnd(sti.nodeIdx, bestScore, TTEntry.T_EXACT, evalScore, hKey);
 		} else {
-			emptyMove.score = bestScore;
-			tt.insert(hKey, emptyMove, TTEntry.T_LE, ply, depth, evalScore);
+			tt.insert(hKey, EMPTY_MOVE, bestScore, TTEntry.T_LE, ply, depth, evalScore);
 			if (log != null)
 				log.logNodeEnd(sti.nodeIdx, bestScore, TTEntry.T_LE, evalScore, hKey);
 		}
@@ -862,8 +866,10 @@ public class Search {
 	/**
 	 * Return true if move should be skipped in order to make engine play weaker.
 	 */
-	private final boolean weakPlaySkipMove(Position pos, Move m, int ply) {
-		long rndL = pos.zobristHash() ^ Position.psHashKeys[0][m.from] ^ Position.psHashKeys[0][m.to] ^ randomSeed;
+	private final boolean weakPlaySkipMove(Position pos, int m, int ply) {
+		final int from = Move.getFrom(m);
+		final int to = Move.getTo(m);
+		long rndL = pos.zobristHash() ^ Position.psHashKeys[0][from] ^ Position.psHashKeys[0][to] ^ randomSeed;
 		double rnd = ((rndL & 0x7fffffffffffffffL) % 1000000000) / 1e9;
 
 		double s = strength * 1e-3;
@@ -871,7 +877,7 @@ public class Search {
 		double effPly = ply * Evaluate.interpolate(pos.wMtrl + pos.bMtrl, 0, 30, Evaluate.qV * 4, 100) * 1e-2;
 		double t = effPly + offs;
 		double p = 1 / (1 + Math.exp(t)); // Probability to "see" move
-		boolean easyMove = ((pos.getPiece(m.to) != Piece.EMPTY) || (ply < 2) || (searchTreeInfo[ply - 2].currentMove.to == m.from));
+		boolean easyMove = ((pos.getPiece(to) != Piece.EMPTY) || (ply < 2) || (Move.getTo(searchTreeInfo[ply - 2].currentMove) == from));
 		if (easyMove)
 			p = 1 - (1 - p) * (1 - p);
 		if (rnd > p)
@@ -880,19 +886,24 @@ public class Search {
 	}
 
 	private static final boolean passedPawnPush(Position pos, Move m) {
-		int p = pos.getPiece(m.from);
+		return passedPawnPush(pos, m.encode());
+	}
+
+	private static final boolean passedPawnPush(Position pos, int m) {
+		int p = pos.getPiece(Move.getFrom(m));
+		int to = Move.getTo(m);
 		if (pos.whiteMove) {
 			if (p != Piece.WPAWN)
 				return false;
-			if ((BitBoard.wPawnBlockerMask[m.to] & pos.pieceTypeBB[Piece.BPAWN]) != 0)
+			if ((BitBoard.wPawnBlockerMask[to] & pos.pieceTypeBB[Piece.BPAWN]) != 0)
 				return false;
-			return m.to >= 40;
+			return to >= 40;
 		} else {
 			if (p != Piece.BPAWN)
 				return false;
-			if ((BitBoard.bPawnBlockerMask[m.to] & pos.pieceTypeBB[Piece.WPAWN]) != 0)
+			if ((BitBoard.bPawnBlockerMask[to] & pos.pieceTypeBB[Piece.WPAWN]) != 0)
 				return false;
-			return m.to <= 23;
+			return to <= 23;
 		}
 	}
 
@@ -944,8 +955,9 @@ public class Search {
 				// so spending more effort on move ordering is probably wasted time.
 				selectBest(moves, mi);
 			}
-			Move m = moves.m[mi];
-			if (pos.getPiece(m.to) == (pos.whiteMove ? Piece.BKING : Piece.WKING)) {
+			final int m = moves.m[mi];
+			final int mTo = Move.getTo(m);
+			if (pos.getPiece(mTo) == (pos.whiteMove ? Piece.BKING : Piece.WKING)) {
 				moveGen.returnMoveList(moves);
 				return MATE0 - ply; // King capture
 			}
@@ -954,7 +966,7 @@ public class Search {
 			if (inCheck) {
 				// Allow all moves
 			} else {
-				if ((pos.getPiece(m.to) == Piece.EMPTY) && (m.promoteTo == Piece.EMPTY)) {
+				if ((pos.getPiece(mTo) == Piece.EMPTY) && (Move.getPromoteTo(m) == Piece.EMPTY)) {
 					// Non-capture
 					if (!tryChecks)
 						continue;
@@ -967,8 +979,8 @@ public class Search {
 				} else {
 					if (negSEE(m))
 						continue;
-					int capt = Evaluate.pieceValue[pos.getPiece(m.to)];
-					int prom = Evaluate.pieceValue[m.promoteTo];
+					int capt = Evaluate.pieceValue[pos.getPiece(mTo)];
+					int prom = Evaluate.pieceValue[Move.getPromoteTo(m)];
 					int optimisticScore = evalScore + capt + prom + 200;
 					if (optimisticScore < alpha) { // Delta pruning
 						if ((pos.wMtrlPawns > 0) && (pos.wMtrl > capt + pos.wMtrlPawns) && (pos.bMtrlPawns > 0) && (pos.bMtrl > capt + pos.bMtrlPawns)) {
@@ -1013,8 +1025,13 @@ public class Search {
 
 	/** Return >0, 0, <0, depending on the sign of SEE(m). */
 	final public int signSEE(Move m) {
-		int p0 = Evaluate.pieceValue[pos.getPiece(m.from)];
-		int p1 = Evaluate.pieceValue[pos.getPiece(m.to)];
+		return signSEE(m.encode());
+	}
+
+	/** Return >0, 0, <0, depending on the sign of SEE(m) for an encoded move. */
+	final public int signSEE(int m) {
+		int p0 = Evaluate.pieceValue[pos.getPiece(Move.getFrom(m))];
+		int p1 = Evaluate.pieceValue[pos.getPiece(Move.getTo(m))];
 		if (p0 < p1)
 			return 1;
 		return SEE(m);
@@ -1022,8 +1039,13 @@ public class Search {
 
 	/** Return true if SEE(m) < 0. */
 	final public boolean negSEE(Move m) {
-		int p0 = Evaluate.pieceValue[pos.getPiece(m.from)];
-		int p1 = Evaluate.pieceValue[pos.getPiece(m.to)];
+		return negSEE(m.encode());
+	}
+
+	/** Return true if SEE(m) < 0 for an encoded move. */
+	final public boolean negSEE(int m) {
+		int p0 = Evaluate.pieceValue[pos.getPiece(Move.getFrom(m))];
+		int p1 = Evaluate.pieceValue[pos.getPiece(Move.getTo(m))];
 		if (p1 >= p0)
 			return false;
 		return SEE(m) < 0;
@@ -1039,9 +1061,14 @@ public class Search {
 	 *         first move.
 	 */
 	final public int SEE(Move m) {
+		return SEE(m.encode());
+	}
+
+	/** Static exchange evaluation of an encoded move. */
+	final public int SEE(int m) {
 		final int kV = Evaluate.kV;
 
-		final int square = m.to;
+		final int square = Move.getTo(m);
 		if (square == pos.getEpSquare()) {
 			captures[0] = Evaluate.pV;
 		} else {
@@ -1156,13 +1183,15 @@ public class Search {
 
 	final void scoreMoveList(MoveGen.MoveList moves, int ply, int startIdx) {
 		for (int i = startIdx; i < moves.size; i++) {
-			Move m = moves.m[i];
-			boolean isCapture = (pos.getPiece(m.to) != Piece.EMPTY) || (m.promoteTo != Piece.EMPTY);
+			int m = moves.m[i];
+			int from = Move.getFrom(m);
+			int to = Move.getTo(m);
+			boolean isCapture = (pos.getPiece(to) != Piece.EMPTY) || (Move.getPromoteTo(m) != Piece.EMPTY);
 			int score = 0;
 			if (isCapture) {
 				int seeScore = isCapture ? signSEE(m) : 0;
-				int v = pos.getPiece(m.to);
-				int a = pos.getPiece(m.from);
+				int v = pos.getPiece(to);
+				int a = pos.getPiece(from);
 				score = Evaluate.pieceValue[v] / 10 * 1000 - Evaluate.pieceValue[a] / 10;
 				if (seeScore > 0)
 					score += 2000000;
@@ -1179,16 +1208,16 @@ public class Search {
 				int hs = ht.getHistScore(pos, m);
 				score += hs;
 			}
-			m.score = score;
+			moves.score[i] = score;
 		}
 	}
 
 	private final void scoreMoveListMvvLva(MoveGen.MoveList moves) {
 		for (int i = 0; i < moves.size; i++) {
-			Move m = moves.m[i];
-			int v = pos.getPiece(m.to);
-			int a = pos.getPiece(m.from);
-			m.score = Evaluate.pieceValue[v] * 10000 - Evaluate.pieceValue[a];
+			int m = moves.m[i];
+			int v = pos.getPiece(Move.getTo(m));
+			int a = pos.getPiece(Move.getFrom(m));
+			moves.score[i] = Evaluate.pieceValue[v] * 10000 - Evaluate.pieceValue[a];
 		}
 	}
 
@@ -1197,35 +1226,30 @@ public class Search {
 	 */
 	final static void selectBest(MoveGen.MoveList moves, int startIdx) {
 		int bestIdx = startIdx;
-		int bestScore = moves.m[bestIdx].score;
+		int bestScore = moves.score[bestIdx];
 		for (int i = startIdx + 1; i < moves.size; i++) {
-			int sc = moves.m[i].score;
+			int sc = moves.score[i];
 			if (sc > bestScore) {
 				bestIdx = i;
 				bestScore = sc;
 			}
 		}
-		if (bestIdx != startIdx) {
-			Move m = moves.m[startIdx];
-			moves.m[startIdx] = moves.m[bestIdx];
-			moves.m[bestIdx] = m;
-		}
+		if (bestIdx != startIdx)
+			moves.swap(startIdx, bestIdx);
 	}
 
 	/**
 	 * If hashMove exists in the move list, move the hash move to the front of the
-	 * list.
+	 * list. The empty move is never in the list.
 	 */
-	final static boolean selectHashMove(MoveGen.MoveList moves, Move hashMove) {
-		if (hashMove == null) {
+	final static boolean selectHashMove(MoveGen.MoveList moves, int hashMove) {
+		if (isEmpty(hashMove)) {
 			return false;
 		}
 		for (int i = 0; i < moves.size; i++) {
-			Move m = moves.m[i];
-			if (m.equals(hashMove)) {
-				moves.m[i] = moves.m[0];
-				moves.m[0] = m;
-				m.score = 10000;
+			if (moves.m[i] == hashMove) {
+				moves.swap(i, 0);
+				moves.score[0] = 10000;
 				return true;
 			}
 		}
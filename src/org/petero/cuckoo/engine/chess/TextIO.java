@@ -211,18 +211,20 @@ public class TextIO {
     public static final void fixupEPSquare(Position pos) {
 	int epSquare = pos.getEpSquare();
 	if (epSquare >= 0) {
-	    MoveGen.MoveList moves = MoveGen.instance.pseudoLegalMoves(pos);
+	    MoveGen moveGen = MoveGen.current();
+	    MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 	    MoveGen.removeIllegal(pos, moves);
 	    boolean epValid = false;
 	    for (int mi = 0; mi < moves.size; mi++) {
-		Move m = moves.m[mi];
-		if (m.to == epSquare) {
-		    if (pos.getPiece(m.from) == (pos.whiteMove ? Piece.WPAWN : Piece.BPAWN)) {
+		int m = moves.m[mi];
+		if (Move.getTo(m) == epSquare) {
+		    if (pos.getPiece(Move.getFrom(m)) == (pos.whiteMove ? Piece.WPAWN : Piece.BPAWN)) {
 			epValid = true;
 			break;
 		    }
 		}
 	    }
+	    moveGen.returnMoveList(moves);
 	    if (!epValid) {
 		pos.setEpSquare(-1);
 	    }
@@ -362,9 +364,12 @@ public class TextIO {
      *            Otherwise, use short notation, eg Nf3
      */
     public static final String moveToString(Position pos, Move move, boolean longForm) {
-	MoveGen.MoveList moves = MoveGen.instance.pseudoLegalMoves(pos);
+	MoveGen moveGen = MoveGen.current();
+	MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 	MoveGen.removeIllegal(pos, moves);
-	return moveToString(pos, move, longForm, moves);
+	String ret = moveToString(pos, move, longForm, moves);
+	moveGen.returnMoveList(moves);
+	return ret;
     }
 
     private static final String moveToString(Position pos, Move move, boolean longForm, MoveGen.MoveList moves) {
@@ -412,14 +417,13 @@ public class TextIO {
 		    int numSameFile = 0;
 		    int numSameRow = 0;
 		    for (int mi = 0; mi < moves.size; mi++) {
-			Move m = moves.m[mi];
-			if (m == null)
-			    break;
-			if ((pos.getPiece(m.from) == p) && (m.to == move.to)) {
+			int m = moves.m[mi];
+			int mFrom = Move.getFrom(m);
+			if ((pos.getPiece(mFrom) == p) && (Move.getTo(m) == move.to)) {
 			    numSameTarget++;
-			    if (Position.getX(m.from) == x1)
+			    if (Position.getX(mFrom) == x1)
 				numSameFile++;
-			    if (Position.getY(m.from) == y1)
+			    if (Position.getY(mFrom) == y1)
 				numSameRow++;
 			}
 		    }
@@ -450,7 +454,8 @@ public class TextIO {
 	UndoInfo ui = new UndoInfo();
 	if (MoveGen.givesCheck(pos, move)) {
 	    pos.makeMove(move, ui);
-	    MoveGen.MoveList nextMoves = MoveGen.instance.pseudoLegalMoves(pos);
+	    MoveGen moveGen = MoveGen.current();
+	    MoveGen.MoveList nextMoves = moveGen.pseudoLegalMoves(pos);
 	    MoveGen.removeIllegal(pos, nextMoves);
 	    if (nextMoves.size == 0) {
 		ret.append('#');
@@ -458,6 +463,7 @@ public class TextIO {
 	    else {
 		ret.append('+');
 	    }
+	    moveGen.returnMoveList(nextMoves);
 	    pos.unMakeMove(move, ui);
 	}
 
@@ -565,21 +571,28 @@ public class TextIO {
      */
     public static final Move stringToMove(Position pos, String strMove) {
 	strMove = strMove.replaceAll("=", "");
-	Move move = null;
 	if (strMove.length() == 0)
-	    return move;
-	MoveGen.MoveList moves = MoveGen.instance.pseudoLegalMoves(pos);
+	    return null;
+	MoveGen moveGen = MoveGen.current();
+	MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 	MoveGen.removeIllegal(pos, moves);
+	Move move = stringToMove(pos, strMove, moves);
+	moveGen.returnMoveList(moves);
+	return move;
+    }
+
+    private static final Move stringToMove(Position pos, String strMove, MoveGen.MoveList moves) {
+	Move move = null;
 	{
 	    char lastChar = strMove.charAt(strMove.length() - 1);
 	    if ((lastChar == '#') || (lastChar == '+')) {
 		MoveGen.MoveList subMoves = new MoveGen.MoveList();
 		int len = 0;
 		for (int mi = 0; mi < moves.size; mi++) {
-		    Move m = moves.m[mi];
+		    Move m = moves.getMove(mi);
 		    String str1 = TextIO.moveToString(pos, m, true, moves);
 		    if (str1.charAt(str1.length() - 1) == lastChar) {
-			subMoves.m[len++] = m;
+			subMoves.m[len++] = moves.m[mi];
 		    }
 		}
 		subMoves.size = len;
@@ -591,7 +604,7 @@ public class TextIO {
 	for (int i = 0; i < 2; i++) {
 	    // Search for full match
 	    for (int mi = 0; mi < moves.size; mi++) {
-		Move m = moves.m[mi];
+		Move m = moves.getMove(mi);
 		String str1 = normalizeMoveString(TextIO.moveToString(pos, m, true, moves));
 		String str2 = normalizeMoveString(TextIO.moveToString(pos, m, false, moves));
 		if (i == 0) {
@@ -610,7 +623,7 @@ public class TextIO {
 	for (int i = 0; i < 2; i++) {
 	    // Search for unique substring match
 	    for (int mi = 0; mi < moves.size; mi++) {
-		Move m = moves.m[mi];
+		Move m = moves.getMove(mi);
 		String str1 = normalizeMoveString(TextIO.moveToString(pos, m, true));
 		String str2 = normalizeMoveString(TextIO.moveToString(pos, m, false));
 		boolean match;
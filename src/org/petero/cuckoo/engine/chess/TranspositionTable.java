@@ -63,12 +63,17 @@ public class TranspositionTable {
         }
 
         public final void getMove(Move m) {
-            m.from = move & 63;
-            m.to = (move >> 6) & 63;
-            m.promoteTo = (move >> 12) & 15;
+            m.setEncoded(getMove());
+        }
+        /** Get the move encoded with Move.encode(). */
+        public final int getMove() {
+            return move & 0xffff;
         }
         public final void setMove(Move move) {
-            this.move = (short)(move.from + (move.to << 6) + (move.promoteTo << 12));
+            setMove(move.encode());
+        }
+        public final void setMove(int move) {
+            this.move = (short)move;
         }
         
         /** Get the score from the hash entry, and convert from "mate in x" to "mate at ply". */
@@ -133,6 +138,11 @@ public class TranspositionTable {
     }
 
     public final void insert(long key, Move sm, int type, int ply, int depth, int evalScore) {
+        insert(key, sm.encode(), sm.score, type, ply, depth, evalScore);
+    }
+
+    /** Insert an encoded move and its score. */
+    public final void insert(long key, int move, int score, int type, int ply, int depth, int evalScore) {
         if (depth < 0) depth = 0;
         int idx0 = h0(key);
         int idx1 = h1(key);
@@ -166,17 +176,17 @@ public class TranspositionTable {
         if ((ent.key == key) && (ent.getDepth() > depth) && (ent.type == type)) {
             if (type == TTEntry.T_EXACT) {
                 doStore = false;
-            } else if ((type == TTEntry.T_GE) && (sm.score <= ent.score)) {
+            } else if ((type == TTEntry.T_GE) && (score <= ent.score)) {
                 doStore = false;
-            } else if ((type == TTEntry.T_LE) && (sm.score >= ent.score)) {
+            } else if ((type == TTEntry.T_LE) && (score >= ent.score)) {
                 doStore = false;
             }
         }
         if (doStore) {
-            if ((ent.key != key) || (sm.from != sm.to))
-                ent.setMove(sm);
+            if ((ent.key != key) || (Move.getFrom(move) != Move.getTo(move)))
+                ent.setMove(move);
             ent.key = key;
-            ent.setScore(sm.score, ply);
+            ent.setScore(score, ply);
             ent.setDepth(depth);
             ent.generation = generation;
             ent.type = (byte)type;
@@ -226,7 +236,7 @@ public class TranspositionTable {
         ArrayList<Move> ret = new ArrayList<Move>();
         UndoInfo ui = new UndoInfo();
         List<Long> hashHistory = new ArrayList<Long>();
-        MoveGen moveGen = new MoveGen();
+        MoveGen moveGen = MoveGen.current();
         while (true) {
             ret.add(m);
             pos.makeMove(m, ui);
@@ -244,10 +254,11 @@ public class TranspositionTable {
             MoveGen.removeIllegal(pos, moves);
             boolean contains = false;
             for (int mi = 0; mi < moves.size; mi++)
-                if (moves.m[mi].equals(m)) {
+                if (moves.m[mi] == ent.getMove()) {
                     contains = true;
                     break;
                 }
+            moveGen.returnMoveList(moves);
             if  (!contains)
                 break;
         }
@@ -263,7 +274,7 @@ public class TranspositionTable {
         UndoInfo ui = new UndoInfo();
         ArrayList<Long> hashHistory = new ArrayList<Long>();
         boolean repetition = false;
-        MoveGen moveGen = MoveGen.instance;
+        MoveGen moveGen = MoveGen.current();
         while (ent.type != TTEntry.T_EMPTY) {
             String type = "";
             if (ent.type == TTEntry.T_LE) {
@@ -277,10 +288,11 @@ public class TranspositionTable {
             MoveGen.removeIllegal(pos, moves);
             boolean contains = false;
             for (int mi = 0; mi < moves.size; mi++)
-                if (moves.m[mi].equals(m)) {
+                if (moves.m[mi] == ent.getMove()) {
                     contains = true;
                     break;
                 }
+            moveGen.returnMoveList(moves);
             if  (!contains)
                 break;
             String moveStr = TextIO.moveToString(pos, m, false);